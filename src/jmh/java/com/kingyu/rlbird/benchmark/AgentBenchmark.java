@@ -0,0 +1,86 @@
+package com.kingyu.rlbird.benchmark;
+
+import ai.djl.Model;
+import ai.djl.ndarray.NDList;
+import ai.djl.training.Trainer;
+import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.rl.ColumnarReplayBuffer;
+import com.kingyu.rlbird.rl.LruReplayBuffer;
+import com.kingyu.rlbird.rl.TransitionBatch;
+import com.kingyu.rlbird.rl.agent.QAgent;
+import com.kingyu.rlbird.util.Constant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the network side: choosing an action for one observation, and a training step on
+ * a batch collated from a filled replay buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class AgentBenchmark {
+
+    private static final int BUFFER_SIZE = 5000;
+
+    @Param({"8", "32", "128"})
+    public int batchSize;
+
+    private Model model;
+    private Trainer trainer;
+    private QAgent agent;
+    private FlappyBird game;
+    private TransitionBatch batch;
+
+    @Setup
+    public void setUp() {
+        model = Fixtures.newModel();
+        trainer = Fixtures.newTrainer(model, batchSize);
+        agent = new QAgent(trainer, 0.9f);
+        game = Fixtures.newGame(new LruReplayBuffer(1, 1));
+        Fixtures.play(game, 100);
+
+        ColumnarReplayBuffer replayBuffer = Fixtures.filledBuffer(batchSize, BUFFER_SIZE);
+        batch = new TransitionBatch(batchSize,
+                Fixtures.DEPTH, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, Fixtures.ACTIONS);
+        batch.fill(replayBuffer.getBatch());
+    }
+
+    @TearDown
+    public void tearDown() {
+        game.close();
+        trainer.close();
+        model.close();
+    }
+
+    /**
+     * Chooses the action of a single environment, which does not depend on the batch size.
+     */
+    @Benchmark
+    public NDList chooseAction() {
+        return agent.chooseAction(game, false);
+    }
+
+    /**
+     * A training step, from uploading the batch to the optimizer update.
+     */
+    @Benchmark
+    public void trainBatch() {
+        agent.trainBatch(batch);
+    }
+}
@@ -0,0 +1,90 @@
+package com.kingyu.rlbird.benchmark;
+
+import ai.djl.ndarray.NDManager;
+import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.game.render.NullRenderer;
+import com.kingyu.rlbird.game.render.OffscreenRenderer;
+import com.kingyu.rlbird.game.render.Renderer;
+import com.kingyu.rlbird.rl.LruReplayBuffer;
+import com.kingyu.rlbird.util.Constant;
+import com.kingyu.rlbird.util.GameUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the game side of a step: running a frame, and turning a frame into an observation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class EnvironmentBenchmark {
+
+    /**
+     * The renderer of the game, the environments shown on no window draw nothing.
+     */
+    @Param({"null", "offscreen"})
+    public String renderer;
+
+    private FlappyBird game;
+    private SplittableRandom random;
+    private BufferedImage image;
+    private byte[] frame;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // every iteration gets a new game, whose observation is freed when it is closed
+        OffscreenRenderer offscreen = new OffscreenRenderer();
+        Renderer gameRenderer = "offscreen".equals(renderer) ? offscreen : new NullRenderer();
+        game = new FlappyBird(NDManager.newBaseManager(), new LruReplayBuffer(1, 1), gameRenderer,
+                Fixtures.newRandom());
+        random = Fixtures.newRandom();
+        Fixtures.play(game, 100);
+        offscreen.render(game);
+        image = offscreen.getFrame();
+        frame = new byte[Constant.OBSERVATION_WIDTH * Constant.OBSERVATION_HEIGHT];
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        game.close();
+    }
+
+    /**
+     * A whole step of the game: the frame with {@link FlappyBird#stepFrame()}, the observation
+     * and the restart on game over, which {@code stepFrame} alone never does.
+     */
+    @Benchmark
+    public void step() {
+        game.step(game.getActionSpace().randomAction(random), false).close();
+    }
+
+    @Benchmark
+    public void createObservation() {
+        game.createObservation(frame);
+    }
+
+    @Benchmark
+    public float[] imgPreprocess() {
+        try (NDManager manager = NDManager.newBaseManager()) {
+            return GameUtil.imgPreprocess(image, manager).toFloatArray();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.kingyu.rlbird.benchmark;
+
+import ai.djl.Model;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.training.Trainer;
+import com.kingyu.rlbird.ai.TrainBird;
+import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.game.render.NullRenderer;
+import com.kingyu.rlbird.rl.ColumnarReplayBuffer;
+import com.kingyu.rlbird.rl.StepSink;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.util.Constant;
+
+import java.util.SplittableRandom;
+
+/**
+ * The fixtures shared by the benchmarks: games, steps played in them and trainers of the real
+ * network, so that the benchmarks run on the same data and shapes as the training does.
+ */
+final class Fixtures {
+
+    static final int DEPTH = 4;
+    static final int ACTIONS = 2;
+    static final long SEED = 42;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a generator of the seed of the benchmarks, so that every run plays the same pipes and
+     * actions.
+     *
+     * @return a new generator
+     */
+    static SplittableRandom newRandom() {
+        return new SplittableRandom(SEED);
+    }
+
+    /**
+     * Creates a game without graphics whose episodes are drawn from the seed of the benchmarks.
+     *
+     * @param replayBuffer the replay buffer of the game
+     * @return the game
+     */
+    static FlappyBird newGame(StepSink replayBuffer) {
+        return new FlappyBird(NDManager.newBaseManager(), replayBuffer, new NullRenderer(), newRandom());
+    }
+
+    /**
+     * Plays a game with random actions drawn from the seed of the benchmarks.
+     *
+     * @param game  the game to play
+     * @param count the number of steps to play
+     * @return the steps played, which only keep their frames
+     */
+    static RlEnv.Step[] play(FlappyBird game, int count) {
+        SplittableRandom random = newRandom();
+        RlEnv.Step[] steps = new RlEnv.Step[count];
+        for (int i = 0; i < count; i++) {
+            steps[i] = game.step(game.getActionSpace().randomAction(random), false);
+        }
+        return steps;
+    }
+
+    /**
+     * Creates a columnar replay buffer filled with steps played in a new game.
+     *
+     * @param batchSize the number of steps per batch
+     * @param size      the number of steps to fill the buffer with
+     * @return the buffer
+     */
+    static ColumnarReplayBuffer filledBuffer(int batchSize, int size) {
+        ColumnarReplayBuffer buffer = new ColumnarReplayBuffer(batchSize, size,
+                DEPTH, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, ACTIONS);
+        FlappyBird game = newGame(buffer);
+        SplittableRandom random = newRandom();
+        for (int i = 0; i < size; i++) {
+            game.step(game.getActionSpace().randomAction(random), true).close();
+        }
+        game.close();
+        return buffer;
+    }
+
+    /**
+     * Creates a model of the Q network.
+     *
+     * @return the model
+     */
+    static Model newModel() {
+        Model model = Model.newInstance("QNetwork");
+        model.setBlock(TrainBird.getBlock());
+        return model;
+    }
+
+    /**
+     * Creates an initialized trainer for the Q network.
+     *
+     * @param model     the model to train
+     * @param batchSize the number of steps per batch
+     * @return the trainer
+     */
+    static Trainer newTrainer(Model model, int batchSize) {
+        Trainer trainer = model.newTrainer(TrainBird.setupTrainingConfig());
+        trainer.initialize(new Shape(batchSize, DEPTH, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH));
+        return trainer;
+    }
+}
@@ -0,0 +1,90 @@
+package com.kingyu.rlbird.benchmark;
+
+import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.rl.ColumnarReplayBuffer;
+import com.kingyu.rlbird.rl.LruReplayBuffer;
+import com.kingyu.rlbird.rl.ReplayBuffer;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.util.Constant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks adding steps to and sampling batches from the replay buffers, with steps played in
+ * a real game.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ReplayBufferBenchmark {
+
+    private static final int STEPS = 1024;
+    private static final int BUFFER_SIZE = 50000;
+
+    @Param({"lru", "columnar"})
+    public String buffer;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private FlappyBird game;
+    private RlEnv.Step[] steps;
+    private ReplayBuffer replayBuffer;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        game = Fixtures.newGame(new LruReplayBuffer(1, 1));
+        steps = Fixtures.play(game, STEPS);
+    }
+
+    @Setup(Level.Iteration)
+    public void fillBuffer() {
+        // a full buffer, so that adding replaces the oldest step as it does while training
+        replayBuffer = "lru".equals(buffer)
+                ? new LruReplayBuffer(batchSize, BUFFER_SIZE)
+                : new ColumnarReplayBuffer(batchSize, BUFFER_SIZE,
+                Fixtures.DEPTH, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, Fixtures.ACTIONS);
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            addStep();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (RlEnv.Step step : steps) {
+            step.close();
+        }
+        game.close();
+    }
+
+    /**
+     * Adds the played steps over and over, the LRU buffer only keeps references to them.
+     */
+    @Benchmark
+    public void addStep() {
+        replayBuffer.addStep(steps[next]);
+        next = (next + 1) % STEPS;
+    }
+
+    @Benchmark
+    public RlEnv.Step[] getBatch() {
+        return replayBuffer.getBatch();
+    }
+}
@@ -0,0 +1,182 @@
+package com.kingyu.rlbird.ai;
+
+import ai.djl.Model;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.training.initializer.NormalInitializer;
+import com.kingyu.rlbird.util.ParameterUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Saves checkpoints of a model without stalling the training.
+ *
+ * <p>A checkpoint copies the parameters into a snapshot of the model, which only takes device
+ * copies, then writes the snapshot on a background thread. The file is written in a temporary
+ * directory and moved into place, so a checkpoint is either complete or absent, and only the last
+ * few checkpoints are kept. Checkpoints are named {@code <prefix>-<step>-0000.params}; other
+ * parameter files in the directory, such as the pre-trained model, are never touched.
+ *
+ * @author Kingyu
+ */
+public class Checkpointer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final Model model;
+    private final Model snapshot;
+    private final Path directory;
+    private final String prefix;
+    private final int keep;
+    private final Pattern checkpointName;
+    private final ExecutorService executorService;
+    private Future<?> pendingWrite;
+
+    /**
+     * Constructs a {@link Checkpointer}.
+     *
+     * @param model         the initialized model being trained
+     * @param snapshotBlock a new block built the same way as the block of the model
+     * @param inputShape    the shape of an input batch
+     * @param directory     the directory to save the checkpoints in
+     * @param prefix        the name of the checkpoints, followed by the step
+     * @param keep          the number of checkpoints to keep
+     */
+    public Checkpointer(Model model, Block snapshotBlock, Shape inputShape, Path directory, String prefix,
+                        int keep) {
+        if (keep < 1) {
+            throw new IllegalArgumentException("Checkpointer needs to keep at least one checkpoint");
+        }
+        this.model = model;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.keep = keep;
+        this.checkpointName = Pattern.compile(Pattern.quote(prefix) + "-(\\d+)-\\d{4}\\.params");
+        snapshot = Model.newInstance(model.getName());
+        snapshotBlock.setInitializer(new NormalInitializer());
+        snapshotBlock.initialize(snapshot.getNDManager(), DataType.FLOAT32, inputShape);
+        snapshot.setBlock(snapshotBlock);
+        executorService = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Takes a snapshot of the parameters and writes it in the background. Waits for the previous
+     * checkpoint to be written first, as it uses the same snapshot.
+     *
+     * @param step the training step of the checkpoint
+     */
+    public synchronized void save(int step) {
+        awaitPendingWrite();
+        ParameterUtil.copy(model.getBlock(), snapshot.getBlock());
+        pendingWrite = executorService.submit(() -> {
+            try {
+                write(step);
+            } catch (IOException e) {
+                logger.error("Failed to save the checkpoint of step " + step, e);
+            }
+        });
+    }
+
+    /**
+     * Runs another write in the background, after the checkpoints taken before it, so that saving
+     * more than the model does not stall the training either.
+     *
+     * @param write the write to run, which reports its own failures
+     */
+    public synchronized void submit(Runnable write) {
+        executorService.submit(write);
+    }
+
+    /**
+     * Waits for the last checkpoint and the other writes submitted to be written, and stops the
+     * background thread.
+     */
+    @Override
+    public synchronized void close() {
+        awaitPendingWrite();
+        executorService.shutdown();
+        try {
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot.close();
+    }
+
+    private void awaitPendingWrite() {
+        if (pendingWrite == null) {
+            return;
+        }
+        try {
+            pendingWrite.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while saving a checkpoint", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to save a checkpoint", e.getCause());
+        } finally {
+            pendingWrite = null;
+        }
+    }
+
+    private void write(int step) throws IOException {
+        String name = prefix + "-" + step;
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempDirectory(directory, "." + name);
+        try {
+            snapshot.save(temporary, name);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(temporary)) {
+                for (Path file : files) {
+                    Files.move(file, directory.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(temporary)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(temporary);
+        }
+        rotate();
+    }
+
+    private void rotate() throws IOException {
+        // the checkpoints by step, newest first
+        TreeMap<Long, Path> checkpoints = new TreeMap<>(Collections.reverseOrder());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = checkpointName.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    checkpoints.put(Long.parseLong(matcher.group(1)), file);
+                }
+            }
+        }
+        int kept = 0;
+        for (Path checkpoint : checkpoints.values()) {
+            if (++kept > keep) {
+                Files.delete(checkpoint);
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.kingyu.rlbird.ai;
+
+import ai.djl.MalformedModelException;
+import ai.djl.Model;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.nn.Block;
+import ai.djl.training.ParameterStore;
+import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.game.render.NullRenderer;
+import com.kingyu.rlbird.rl.LruReplayBuffer;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.util.Seeds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how well the checkpoints of the Q-network play, and how fast they choose their actions.
+ *
+ * <p>Every checkpoint plays the same episodes, seeded from the seed of the run, greedily and
+ * without graphics. The episodes are spread over a pool of threads, each playing its own game, and
+ * every forward pass is timed. An episode ends when the bird dies, or after a cap of steps so that
+ * a bird that never dies does not play forever.
+ *
+ * @author Kingyu
+ */
+public final class Evaluator {
+    private static final Logger logger = LoggerFactory.getLogger(Evaluator.class);
+
+    private static final Pattern CHECKPOINT_NAME = Pattern.compile("(dqn-.+)-\\d{4}\\.params");
+
+    private final int episodes;
+    private final int threads;
+    private final int maxSteps;
+    private final int actionRepeat;
+    private final boolean maxPool;
+
+    /**
+     * Constructs an {@link Evaluator}.
+     *
+     * @param episodes     the number of episodes to play with every checkpoint
+     * @param threads      the number of games to play at once
+     * @param maxSteps     the number of steps an episode is cut at, 0 for no cap
+     * @param actionRepeat the number of frames each action is played for
+     * @param maxPool      true to observe the maximum of the last two frames of an action
+     */
+    public Evaluator(int episodes, int threads, int maxSteps, int actionRepeat, boolean maxPool) {
+        if (episodes < 1 || threads < 1 || maxSteps < 0) {
+            throw new IllegalArgumentException("Invalid evaluation of " + episodes + " episodes on " + threads
+                    + " threads, capped at " + maxSteps + " steps");
+        }
+        this.episodes = episodes;
+        this.threads = threads;
+        this.maxSteps = maxSteps;
+        this.actionRepeat = actionRepeat;
+        this.maxPool = maxPool;
+    }
+
+    /**
+     * Evaluates every {@code dqn-*} checkpoint of a directory, and logs a report of each and a
+     * ranking of all of them by mean score.
+     *
+     * @param directory the directory of the checkpoints
+     * @throws IOException if a checkpoint cannot be read
+     * @throws MalformedModelException if a checkpoint does not match the network
+     */
+    public void evaluateAll(Path directory) throws IOException, MalformedModelException {
+        List<String> checkpoints = findCheckpoints(directory);
+        if (checkpoints.isEmpty()) {
+            logger.warn("No checkpoint to evaluate in {}", directory);
+            return;
+        }
+        List<Report> reports = new ArrayList<>();
+        for (String checkpoint : checkpoints) {
+            try (Model model = Model.newInstance("QNetwork")) {
+                model.setBlock(TrainBird.getBlock());
+                model.load(directory, checkpoint);
+                Report report = evaluate(checkpoint, model.getBlock(), model.getNDManager());
+                logger.info("{}", report);
+                reports.add(report);
+            }
+        }
+        reports.sort(Comparator.comparingDouble((Report report) -> report.meanScore).reversed());
+        logger.info("Checkpoints by mean score over {} episodes:", episodes);
+        for (Report report : reports) {
+            logger.info(String.format("  %-20s mean %8.2f, median %6d, max %6d", report.name, report.meanScore,
+                    report.scorePercentile(50), report.scorePercentile(100)));
+        }
+    }
+
+    /**
+     * Returns the names of the {@code dqn-*} checkpoints of a directory, the pre-trained ones first,
+     * then by step.
+     *
+     * @param directory the directory of the checkpoints
+     * @return the names to load the checkpoints with
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<String> findCheckpoints(Path directory) throws IOException {
+        List<String> checkpoints = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return checkpoints;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = CHECKPOINT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && !checkpoints.contains(matcher.group(1))) {
+                    checkpoints.add(matcher.group(1));
+                }
+            }
+        }
+        checkpoints.sort(Comparator.comparingLong(Evaluator::stepOf).thenComparing(Comparator.naturalOrder()));
+        return checkpoints;
+    }
+
+    /**
+     * Plays the episodes with a network.
+     *
+     * @param name    the name of the network in the report
+     * @param block   the initialized network
+     * @param manager the manager of the parameters of the network
+     * @return the report of the episodes
+     */
+    public Report evaluate(String name, Block block, NDManager manager) {
+        // the same episodes for every network
+        SplittableRandom random = new SplittableRandom(Seeds.getSeed());
+        long[] seeds = new long[episodes];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+        long[] scores = new long[episodes];
+        int[] lengths = new int[episodes];
+        AtomicInteger nextEpisode = new AtomicInteger();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "evaluator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        List<long[]> latencies = new ArrayList<>();
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executorService.submit(() ->
+                        play(block, manager, seeds, scores, lengths, nextEpisode)));
+            }
+            for (Future<long[]> future : futures) {
+                latencies.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating " + name, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to evaluate " + name, e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int steps = 0;
+        for (long[] threadLatencies : latencies) {
+            steps += threadLatencies.length;
+        }
+        long[] allLatencies = new long[steps];
+        int offset = 0;
+        for (long[] threadLatencies : latencies) {
+            System.arraycopy(threadLatencies, 0, allLatencies, offset, threadLatencies.length);
+            offset += threadLatencies.length;
+        }
+        return new Report(name, scores, lengths, allLatencies, seconds);
+    }
+
+    /**
+     * Plays episodes on the calling thread until there are none left.
+     *
+     * @return the latency of every forward pass, in nanoseconds
+     */
+    private long[] play(Block block, NDManager manager, long[] seeds, long[] scores, int[] lengths,
+                        AtomicInteger nextEpisode) {
+        ParameterStore parameterStore = new ParameterStore(manager, false);
+        long[] latencies = new long[1024];
+        int steps = 0;
+        for (int episode = nextEpisode.getAndIncrement(); episode < seeds.length;
+             episode = nextEpisode.getAndIncrement()) {
+            // a game per episode, so that its observations are freed with it
+            FlappyBird game = new FlappyBird(NDManager.newBaseManager(), new LruReplayBuffer(1, 1),
+                    new NullRenderer(), new SplittableRandom(seeds[episode]));
+            try {
+                game.setActionRepeat(actionRepeat, maxPool);
+                game.startEpisode(seeds[episode]);
+                int length = 0;
+                boolean terminal = false;
+                while (!terminal && (maxSteps == 0 || length < maxSteps)) {
+                    long start = System.nanoTime();
+                    float[] values;
+                    // the arrays of the forward pass go to the manager of its input, so the
+                    // observation of the game is copied into one freed every step
+                    try (NDManager stepManager = NDManager.newBaseManager()) {
+                        NDArray observation = game.getObservation().singletonOrThrow().duplicate();
+                        observation.attach(stepManager);
+                        values = block.forward(parameterStore, new NDList(observation), false)
+                                .singletonOrThrow().toFloatArray();
+                    }
+                    if (steps == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, steps * 2);
+                    }
+                    latencies[steps++] = System.nanoTime() - start;
+
+                    int best = 0;
+                    for (int i = 1; i < values.length; i++) {
+                        if (values[i] > values[best]) {
+                            best = i;
+                        }
+                    }
+                    game.reset();
+                    RlEnv.Step step = game.step(game.getActionSpace().get(best), false);
+                    terminal = step.isTerminal();
+                    step.close();
+                    // the game restarts once the bird is dead, so a step it dies in has the score it ended with
+                    scores[episode] = terminal ? game.getLastEpisodeScore() : game.getScore();
+                    length++;
+                }
+                lengths[episode] = length;
+            } finally {
+                game.close();
+            }
+        }
+        return Arrays.copyOf(latencies, steps);
+    }
+
+    private static long stepOf(String checkpoint) {
+        String step = checkpoint.substring(checkpoint.indexOf('-') + 1);
+        return step.matches("\\d+") ? Long.parseLong(step) : -1;
+    }
+
+    /**
+     * The scores, lengths and inference latencies of the episodes played by a network.
+     */
+    public static final class Report {
+        private final String name;
+        private final long[] scores;
+        private final int[] lengths;
+        private final long[] latencies;
+        private final double seconds;
+        private final double meanScore;
+
+        Report(String name, long[] scores, int[] lengths, long[] latencies, double seconds) {
+            this.name = name;
+            this.scores = scores.clone();
+            this.lengths = lengths.clone();
+            this.latencies = latencies.clone();
+            this.seconds = seconds;
+            Arrays.sort(this.scores);
+            Arrays.sort(this.lengths);
+            Arrays.sort(this.latencies);
+            double sum = 0;
+            for (long score : scores) {
+                sum += score;
+            }
+            meanScore = sum / scores.length;
+        }
+
+        /**
+         * Returns the name of the network.
+         *
+         * @return the name of the network
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the mean score of the episodes.
+         *
+         * @return the mean score
+         */
+        public double getMeanScore() {
+            return meanScore;
+        }
+
+        /**
+         * Returns a percentile of the scores of the episodes.
+         *
+         * @param percentile the percentile, from 0 to 100
+         * @return the score at the percentile
+         */
+        public long scorePercentile(double percentile) {
+            return scores[index(scores.length, percentile)];
+        }
+
+        /**
+         * Returns a percentile of the latencies of the forward passes.
+         *
+         * @param percentile the percentile, from 0 to 100
+         * @return the latency at the percentile, in nanoseconds
+         */
+        public long latencyPercentile(double percentile) {
+            return latencies.length == 0 ? 0 : latencies[index(latencies.length, percentile)];
+        }
+
+        private static int index(int length, double percentile) {
+            return Math.min(length - 1, Math.max(0, (int) Math.ceil(percentile / 100 * length) - 1));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            double sumSquares = 0;
+            long steps = 0;
+            for (long score : scores) {
+                sumSquares += (score - meanScore) * (score - meanScore);
+            }
+            for (int length : lengths) {
+                steps += length;
+            }
+            return String.format("%s: %d episodes in %.1f s%n"
+                            + "  score   mean %.2f, std %.2f, min %d, p25 %d, median %d, p75 %d, p90 %d, max %d%n"
+                            + "  length  mean %.1f, median %d, max %d steps%n"
+                            + "  forward %.0f/s, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    name, scores.length, seconds,
+                    meanScore, Math.sqrt(sumSquares / scores.length), scores[0], scorePercentile(25),
+                    scorePercentile(50), scorePercentile(75), scorePercentile(90), scorePercentile(100),
+                    (double) steps / lengths.length, lengths[index(lengths.length, 50)], lengths[lengths.length - 1],
+                    latencies.length / seconds, latencyPercentile(50) / 1e6, latencyPercentile(90) / 1e6,
+                    latencyPercentile(99) / 1e6, latencyPercentile(100) / 1e6);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import ai.djl.Model;
 import ai.djl.ndarray.NDManager;
 import ai.djl.ndarray.types.Shape;
 import ai.djl.nn.Activation;
+import ai.djl.nn.Block;
 import ai.djl.nn.Blocks;
 import ai.djl.nn.SequentialBlock;
 import ai.djl.nn.convolutional.Conv2d;
@@ -18,21 +19,52 @@ import ai.djl.training.loss.Loss;
 import ai.djl.training.optimizer.Adam;
 import ai.djl.training.tracker.LinearTracker;
 import ai.djl.training.tracker.Tracker;
+import com.kingyu.rlbird.game.EpisodeRecorder;
 import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.game.render.NullRenderer;
+import com.kingyu.rlbird.game.render.WindowRenderer;
+import com.kingyu.rlbird.metrics.Metrics;
+import com.kingyu.rlbird.rl.BatchPrefetcher;
+import com.kingyu.rlbird.rl.PersistentReplayBuffer;
+import com.kingyu.rlbird.rl.PrioritizedReplayBuffer;
+import com.kingyu.rlbird.rl.ReplayBuffer;
+import com.kingyu.rlbird.rl.ReplayScheduler;
+import com.kingyu.rlbird.rl.StripedReplayBuffer;
+import com.kingyu.rlbird.rl.TransitionDataset;
+import com.kingyu.rlbird.rl.TransitionRecorder;
+import com.kingyu.rlbird.rl.TransitionBatch;
 import com.kingyu.rlbird.rl.agent.EpsilonGreedy;
+import com.kingyu.rlbird.rl.agent.PolicySnapshot;
 import com.kingyu.rlbird.rl.agent.QAgent;
 import com.kingyu.rlbird.rl.agent.RlAgent;
+import com.kingyu.rlbird.rl.agent.TargetNetwork;
 import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.VecEnv;
+import com.kingyu.rlbird.rl.remote.RemoteReplayBuffer;
+import com.kingyu.rlbird.rl.remote.TransitionServer;
 import com.kingyu.rlbird.util.Arguments;
 import com.kingyu.rlbird.util.Constant;
+import com.kingyu.rlbird.util.EventLog;
+import com.kingyu.rlbird.util.NativeMemory;
+import com.kingyu.rlbird.util.Seeds;
 import org.apache.commons.cli.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -45,21 +77,46 @@ public final class TrainBird {
     public static final int OBSERVE = 1000; // gameSteps to observe before training
     public static final int EXPLORE = 3000000; // frames over which to anneal epsilon
     public static final int SAVE_EVERY_STEPS = 100000; // save model every 100,000 step
+    public static final int CHECKPOINTS_TO_KEEP = 3; // number of saved models to keep
     public static final int REPLAY_BUFFER_SIZE = 50000; // number of previous transitions to remember
+    public static final int PREFETCH_BATCHES = 2; // batches collated ahead of the trainer
+    public static final int DATASET_CHUNK_RECORDS = 1024; // transitions mapped and shuffled together when training offline
     public static final float REWARD_DISCOUNT = 0.9f; // decay rate of past observations
+    public static final int N_STEP = 3; // rewards summed in a replayed step before bootstrapping
+    public static final int TARGET_SYNC_STEPS = 1000; // trainSteps between two syncs of the target network
+    public static final int POLICY_PUBLISH_STEPS = 100; // trainSteps between two snapshots of the network the actions are chosen with
+    public static final float TARGET_SYNC_TAU = 1f; // share of the trained network taken on a sync, 1 for a hard sync
     public static final float INITIAL_EPSILON = 0.01f;
     public static final float FINAL_EPSILON = 0.0001f;
+    public static final float PRIORITY_ALPHA = 0.6f; // how much the TD errors count when sampling
+    public static final float INITIAL_BETA = 0.4f; // importance-sampling exponent, annealed to 1
+    public static final int METRICS_INTERVAL_SECONDS = 10; // seconds between two metric snapshots
+    public static final int PARAMETER_BROADCAST_STEPS = 100; // trainSteps between two broadcasts of the parameters to the actors
+    public static final int REPLAY_SLACK = 32; // trainSteps the trainer may fall behind the replay ratio before the environments wait
     public static final String PARAMS_PREFIX = "dqn-trained";
 
-    static RlEnv.Step[] batchSteps;
-
     private TrainBird() {}
 
     public static void main(String[] args) throws ParseException, IOException, MalformedModelException {
         Arguments arguments = Arguments.parseArgs(args);
+        if (arguments.getSeed() != null) {
+            Seeds.init(arguments.getSeed());
+        }
+        logger.info("Seed {}", Seeds.getSeed());
+        Seeds.seedEngine();
+        NativeMemory.setBudget(arguments.getNativeBudget() * 1024L * 1024L);
+        if (arguments.getEvaluate() != null) {
+            new Evaluator(arguments.getEvaluate(), arguments.getEnvs(), arguments.getEpisodeCap(),
+                    arguments.getActionRepeat(), arguments.useMaxPool()).evaluateAll(Paths.get(Constant.MODEL_PATH));
+            return;
+        }
         Model model = createOrLoadModel(arguments);
         if (arguments.isTesting()) {
             test(model);
+        } else if (arguments.getJoin() != null) {
+            act(arguments, model);
+        } else if (arguments.getOffline() != null) {
+            trainOffline(arguments, model);
         } else {
             train(arguments, model);
         }
@@ -74,19 +131,91 @@ public final class TrainBird {
         return model;
     }
 
-    public static void train(Arguments arguments, Model model) {
+    public static void train(Arguments arguments, Model model) throws IOException {
         boolean withGraphics = arguments.withGraphics();
         boolean training = !arguments.isTesting();
         int batchSize = arguments.getBatchSize();  // size of mini batch
+        // a learner only trains, on the steps played by its actors
+        boolean learner = training && (arguments.getLearnerPort() != null || arguments.getActors() > 0);
+        int stripes = learner ? Math.max(1, arguments.getActors() * arguments.getEnvs()) : arguments.getEnvs();
 
-        FlappyBird game = new FlappyBird(NDManager.newBaseManager(), batchSize, REPLAY_BUFFER_SIZE, withGraphics);
+        // the environments share one replay buffer, only the first one is shown with graphics
+        PrioritizedReplayBuffer prioritizedBuffer = null;
+        PersistentReplayBuffer replayBuffer;
+        if (arguments.usePrioritized()) {
+            Tracker beta =
+                    new LinearTracker.Builder()
+                            .setBaseValue(INITIAL_BETA)
+                            .optSlope((1 - INITIAL_BETA) / EXPLORE)
+                            .optMaxValue(1)
+                            .build();
+            prioritizedBuffer = new PrioritizedReplayBuffer(batchSize, REPLAY_BUFFER_SIZE,
+                    4, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, 2, N_STEP, REWARD_DISCOUNT,
+                    PRIORITY_ALPHA, beta);
+            replayBuffer = prioritizedBuffer;
+        } else {
+            replayBuffer = new StripedReplayBuffer(batchSize, REPLAY_BUFFER_SIZE, stripes,
+                    4, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, 2, N_STEP, REWARD_DISCOUNT);
+        }
+        Path replayFile = arguments.getReplayFile() == null ? null : Paths.get(arguments.getReplayFile());
+        if (replayFile != null) {
+            restoreReplayBuffer(replayBuffer, replayFile);
+        }
+        // the restored steps count as observed, the ratio starts from them
+        ReplayScheduler scheduler = new ReplayScheduler(FlappyBird.gameStep, FlappyBird.trainStep,
+                training ? arguments.getReplayRatio() : 0, Math.max(OBSERVE, FlappyBird.gameStep.get()),
+                REPLAY_SLACK);
+        TransitionServer server = null;
+        List<Process> actors = new ArrayList<>();
+        if (learner) {
+            server = new TransitionServer(arguments.getLearnerPort() == null ? 0 : arguments.getLearnerPort(),
+                    replayBuffer, scheduler, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, 2);
+            logger.info("Learning from the actors on port {}", server.getPort());
+            for (int i = 0; i < arguments.getActors(); i++) {
+                actors.add(startActor(server.getPort(), arguments, Seeds.getSeed() + i + 1));
+            }
+        }
+        FlappyBird[] games = new FlappyBird[learner ? 0 : arguments.getEnvs()];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = new FlappyBird(NDManager.newBaseManager(), replayBuffer,
+                    withGraphics && i == 0 ? new WindowRenderer() : new NullRenderer());
+            games[i].setActionRepeat(arguments.getActionRepeat(), arguments.useMaxPool());
+        }
+        VecEnv envs = learner ? null : new VecEnv(games);
+        TransitionRecorder transitionRecorder = null;
+        if (arguments.getRecordTransitions() != null) {
+            transitionRecorder = new TransitionRecorder(Paths.get(arguments.getRecordTransitions()),
+                    4, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, 2);
+        }
+        EpisodeRecorder recorder = null;
+        if (arguments.getRecordEpisodes() != null) {
+            recorder = new EpisodeRecorder(Paths.get(arguments.getRecordEpisodes()), Seeds.getSeed());
+            for (FlappyBird game : games) {
+                game.setRecorder(recorder);
+            }
+        }
+        EventLog.start(arguments.getEventLog() == null ? null : Paths.get(arguments.getEventLog()));
+        if (arguments.getMetrics() != null) {
+            Metrics.start(Paths.get(arguments.getMetrics()), METRICS_INTERVAL_SECONDS);
+        }
+        BatchPrefetcher prefetcher = new BatchPrefetcher(replayBuffer, PREFETCH_BATCHES, batchSize,
+                4, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, 2);
 
             DefaultTrainingConfig config = setupTrainingConfig();
             try (Trainer trainer = model.newTrainer(config)) {
                 trainer.initialize(new Shape(batchSize, 4, 80, 80));
                 trainer.notifyListeners(listener -> listener.onTrainingBegin(trainer));
 
-                RlAgent agent = new QAgent(trainer, REWARD_DISCOUNT);
+                TargetNetwork targetNetwork = new TargetNetwork(model.getBlock(), getBlock(), model.getNDManager(),
+                        new Shape(batchSize, 4, 80, 80), TARGET_SYNC_STEPS, TARGET_SYNC_TAU);
+                // the environments choose their actions with a snapshot, not the network being trained
+                PolicySnapshot policySnapshot = new PolicySnapshot(model.getBlock(), getBlock(), getBlock(),
+                        model.getNDManager(), new Shape(batchSize, 4, 80, 80), POLICY_PUBLISH_STEPS);
+                // the replayed steps already sum N_STEP rewards, the bootstrap is discounted N_STEP times
+                RlAgent agent = new QAgent(trainer, (float) Math.pow(REWARD_DISCOUNT, N_STEP), prioritizedBuffer,
+                        targetNetwork, policySnapshot);
+                Checkpointer checkpointer = new Checkpointer(model, getBlock(), new Shape(batchSize, 4, 80, 80),
+                        Paths.get(Constant.MODEL_PATH), "dqn", CHECKPOINTS_TO_KEEP);
                 Tracker exploreRate =
                         new LinearTracker.Builder()
                                 .setBaseValue(INITIAL_EPSILON)
@@ -97,9 +226,13 @@ public final class TrainBird {
 
                 int numOfThreads = 2;
                 List<Callable<Object>> callables = new ArrayList<>(numOfThreads);
-                callables.add(new GeneratorCallable(game, agent, training));
+                if (!learner) {
+                    callables.add(new GeneratorCallable(envs, replayBuffer, transitionRecorder, agent, training,
+                            scheduler));
+                }
                 if(training) {
-                    callables.add(new TrainerCallable(model, agent));
+                    callables.add(new TrainerCallable(checkpointer, prefetcher, agent, scheduler, replayBuffer,
+                            replayFile, server, model.getBlock()));
                 }
                 ExecutorService executorService = Executors.newFixedThreadPool(numOfThreads);
                 try {
@@ -116,61 +249,318 @@ public final class TrainBird {
                     }
                 } finally {
                     executorService.shutdown();
+                    if (server != null) {
+                        server.close();
+                    }
+                    for (Process actor : actors) {
+                        actor.destroy();
+                    }
+                    prefetcher.close();
+                    if (replayFile != null && training) {
+                        // after any save still running, which would otherwise replace this one
+                        checkpointer.submit(() -> saveReplayBuffer(replayBuffer, replayFile));
+                    }
+                    checkpointer.close();
+                    if (envs != null) {
+                        envs.close();
+                    }
+                    logger.info("{}", NativeMemory.report());
+                    if (recorder != null) {
+                        recorder.close();
+                    }
+                    if (transitionRecorder != null) {
+                        transitionRecorder.close();
+                    }
+                    EventLog.stop();
+                    Metrics.stop();
+                }
+            }
+    }
+
+    /**
+     * Trains on the transitions recorded with {@code -w}, streamed from the files, without running
+     * any environment.
+     */
+    public static void trainOffline(Arguments arguments, Model model) throws IOException {
+        int batchSize = arguments.getBatchSize();
+        List<Path> files = new ArrayList<>();
+        for (String file : arguments.getOffline().split(",")) {
+            files.add(Paths.get(file.trim()));
+        }
+        try (TransitionDataset dataset = new TransitionDataset(files, batchSize, DATASET_CHUNK_RECORDS,
+                4, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, 2)) {
+            logger.info("Training offline on {} transitions", dataset.size());
+            // every transition of the dataset counts as observed
+            FlappyBird.gameStep.set((int) Math.min(Integer.MAX_VALUE, Math.max(dataset.size(), OBSERVE + 1)));
+            // nothing is played, the trainer goes through the dataset as fast as it can
+            ReplayScheduler scheduler = new ReplayScheduler(FlappyBird.gameStep, FlappyBird.trainStep, 0, OBSERVE,
+                    REPLAY_SLACK);
+            EventLog.start(arguments.getEventLog() == null ? null : Paths.get(arguments.getEventLog()));
+            if (arguments.getMetrics() != null) {
+                Metrics.start(Paths.get(arguments.getMetrics()), METRICS_INTERVAL_SECONDS);
+            }
+            BatchPrefetcher prefetcher = new BatchPrefetcher(dataset, PREFETCH_BATCHES, batchSize,
+                    4, Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, 2);
+
+            try (Trainer trainer = model.newTrainer(setupTrainingConfig())) {
+                trainer.initialize(new Shape(batchSize, 4, 80, 80));
+                trainer.notifyListeners(listener -> listener.onTrainingBegin(trainer));
+
+                TargetNetwork targetNetwork = new TargetNetwork(model.getBlock(), getBlock(), model.getNDManager(),
+                        new Shape(batchSize, 4, 80, 80), TARGET_SYNC_STEPS, TARGET_SYNC_TAU);
+                RlAgent agent = new QAgent(trainer, REWARD_DISCOUNT, null, targetNetwork);
+                Checkpointer checkpointer = new Checkpointer(model, getBlock(), new Shape(batchSize, 4, 80, 80),
+                        Paths.get(Constant.MODEL_PATH), "dqn", CHECKPOINTS_TO_KEEP);
+                try {
+                    new TrainerCallable(checkpointer, prefetcher, agent, scheduler, null, null, null, null).call();
+                } catch (Exception e) {
+                    logger.error("", e);
+                } finally {
+                    prefetcher.close();
+                    checkpointer.close();
+                    EventLog.stop();
+                    Metrics.stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays as an actor of the learner given with {@code -j}: the steps are sent to the learner
+     * instead of a replay buffer, and the network takes the parameters the learner sends, until the
+     * learner stops.
+     */
+    public static void act(Arguments arguments, Model model) throws IOException {
+        String join = arguments.getJoin();
+        int separator = join.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected HOST:PORT to join, got " + join);
+        }
+        try (RemoteReplayBuffer remote = new RemoteReplayBuffer(join.substring(0, separator),
+                Integer.parseInt(join.substring(separator + 1)),
+                Constant.OBSERVATION_HEIGHT, Constant.OBSERVATION_WIDTH, 2)) {
+            FlappyBird[] games = new FlappyBird[arguments.getEnvs()];
+            for (int i = 0; i < games.length; i++) {
+                games[i] = new FlappyBird(NDManager.newBaseManager(), remote,
+                        arguments.withGraphics() && i == 0 ? new WindowRenderer() : new NullRenderer());
+                games[i].setActionRepeat(arguments.getActionRepeat(), arguments.useMaxPool());
+            }
+            VecEnv envs = new VecEnv(games);
+            EventLog.start(arguments.getEventLog() == null ? null : Paths.get(arguments.getEventLog()));
+            try (Trainer trainer = model.newTrainer(setupTrainingConfig())) {
+                trainer.initialize(new Shape(1, 4, 80, 80));
+                Tracker exploreRate =
+                        new LinearTracker.Builder()
+                                .setBaseValue(INITIAL_EPSILON)
+                                .optSlope(-(INITIAL_EPSILON - FINAL_EPSILON) / EXPLORE)
+                                .optMinValue(FINAL_EPSILON)
+                                .build();
+                RlAgent agent = new EpsilonGreedy(new QAgent(trainer, REWARD_DISCOUNT), exploreRate);
+                logger.info("Playing for the learner at {}", join);
+                while (!remote.isClosed()) {
+                    VecEnv.Result result = envs.runEnvironment(agent, true);
+                    // the steps are on their way to the learner, nothing holds them here
+                    for (RlEnv.Step step : result.getSteps()) {
+                        step.close();
+                    }
+                    remote.flush();
+                    remote.applyParameters(model.getBlock());
                 }
+            } catch (UncheckedIOException e) {
+                logger.info("Lost the learner: {}", e.getMessage());
+            } finally {
+                envs.close();
+                logger.info("{}", NativeMemory.report());
+                EventLog.stop();
             }
+        }
     }
 
-    public static void test(Model model) {
+    public static void test(Model model) throws IOException {
         FlappyBird game = new FlappyBird(NDManager.newBaseManager(), 1, 1, true);
+        EventLog.start(null);
         DefaultTrainingConfig config = setupTrainingConfig();
         try (Trainer trainer = model.newTrainer(config)) {
             RlAgent agent = new QAgent(trainer, REWARD_DISCOUNT);
             while (true) {
                 game.runEnvironment(agent, false);
+                // the window no longer slows the game down, a test is played at the speed of the game
+                try {
+                    Thread.sleep(Constant.FPS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
         }
     }
 
+    /**
+     * Restores the replay buffer saved by a previous run, and skips the observation of the run
+     * for the steps restored.
+     */
+    private static void restoreReplayBuffer(PersistentReplayBuffer replayBuffer, Path replayFile) throws IOException {
+        long start = System.nanoTime();
+        try {
+            replayBuffer.restore(replayFile);
+        } catch (NoSuchFileException e) {
+            logger.info("No replay buffer saved in {}, starting empty", replayFile);
+            return;
+        }
+        FlappyBird.gameStep.accumulateAndGet(replayBuffer.size(), Math::max);
+        logger.info("Restored {} steps from {} in {} ms", replayBuffer.size(), replayFile,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Starts an actor process in the same JVM setup as this one, playing the games the same way.
+     */
+    private static Process startActor(int port, Arguments arguments, long seed) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // a debugger agent would listen on the same port as this JVM
+            if (!argument.startsWith("-agentlib:jdwp")) {
+                command.add(argument);
+            }
+        }
+        command.add("-cp");
+        command.add(actorClassPath());
+        command.add(TrainBird.class.getName());
+        command.add("-j");
+        command.add("localhost:" + port);
+        command.add("-e");
+        command.add(Integer.toString(arguments.getEnvs()));
+        command.add("-k");
+        command.add(Integer.toString(arguments.getActionRepeat()));
+        if (arguments.useMaxPool()) {
+            command.add("-x");
+        }
+        command.add("-s");
+        command.add(Long.toString(seed));
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Returns the class path TrainBird was loaded from, which is not the one of the JVM when run by
+     * {@code mvn exec:java}.
+     */
+    private static String actorClassPath() {
+        Set<String> entries = new LinkedHashSet<>();
+        for (ClassLoader loader = TrainBird.class.getClassLoader(); loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    if ("file".equals(url.getProtocol())) {
+                        try {
+                            entries.add(Paths.get(url.toURI()).toString());
+                        } catch (URISyntaxException e) {
+                            throw new IllegalStateException("Invalid class path entry " + url, e);
+                        }
+                    }
+                }
+            }
+        }
+        if (entries.isEmpty()) {
+            return System.getProperty("java.class.path");
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static void saveReplayBuffer(PersistentReplayBuffer replayBuffer, Path replayFile) {
+        try {
+            replayBuffer.save(replayFile);
+        } catch (IOException e) {
+            logger.error("Failed to save the replay buffer", e);
+        }
+    }
+
     private static class TrainerCallable implements Callable<Object> {
         private final RlAgent agent;
-        private final Model model;
+        private final Checkpointer checkpointer;
+        private final BatchPrefetcher prefetcher;
+        private final ReplayScheduler scheduler;
+        private final PersistentReplayBuffer replayBuffer;
+        private final Path replayFile;
+        private final TransitionServer server;
+        private final Block block;
 
-        public TrainerCallable(Model model, RlAgent agent) {
-            this.model = model;
+        public TrainerCallable(Checkpointer checkpointer, BatchPrefetcher prefetcher, RlAgent agent,
+                               ReplayScheduler scheduler, PersistentReplayBuffer replayBuffer, Path replayFile,
+                               TransitionServer server, Block block) {
+            this.checkpointer = checkpointer;
+            this.prefetcher = prefetcher;
             this.agent = agent;
+            this.scheduler = scheduler;
+            this.replayBuffer = replayBuffer;
+            this.replayFile = replayFile;
+            this.server = server;
+            this.block = block;
         }
 
         @Override
         public Object call() throws Exception {
-            while (FlappyBird.trainStep < EXPLORE) {
-                Thread.sleep(0);
-                if (FlappyBird.gameStep > OBSERVE) {
-                    this.agent.trainBatch(batchSteps);
-                    FlappyBird.trainStep++;
-                    if (FlappyBird.trainStep > 0 && FlappyBird.trainStep % SAVE_EVERY_STEPS == 0) {
-                        model.save(Paths.get(Constant.MODEL_PATH), "dqn-" + FlappyBird.trainStep);
+            try {
+                if (server != null) {
+                    server.broadcast(block);
+                }
+                while (FlappyBird.trainStep.get() < EXPLORE && scheduler.awaitTrainStep()) {
+                    TransitionBatch batch = prefetcher.take();
+                    this.agent.trainBatch(batch);
+                    prefetcher.release(batch);
+                    int trainStep = scheduler.addTrainStep();
+                    EventLog.train(trainStep);
+                    if (server != null && trainStep % PARAMETER_BROADCAST_STEPS == 0) {
+                        server.broadcast(block);
+                    }
+                    if (trainStep % SAVE_EVERY_STEPS == 0) {
+                        checkpointer.save(trainStep);
+                        logger.info("{}", NativeMemory.report());
+                        if (replayFile != null) {
+                            checkpointer.submit(() -> saveReplayBuffer(replayBuffer, replayFile));
+                        }
                     }
                 }
+            } finally {
+                // the environments stop with the trainer, and the other way round
+                scheduler.shutdown();
             }
             return null;
         }
     }
 
     private static class GeneratorCallable implements Callable<Object> {
-        private final FlappyBird game;
+        private final VecEnv envs;
+        private final ReplayBuffer replayBuffer;
+        private final TransitionRecorder transitionRecorder;
         private final RlAgent agent;
         private final boolean training;
+        private final ReplayScheduler scheduler;
 
-        public GeneratorCallable(FlappyBird game, RlAgent agent, boolean training) {
-            this.game = game;
+        public GeneratorCallable(VecEnv envs, ReplayBuffer replayBuffer, TransitionRecorder transitionRecorder,
+                                 RlAgent agent, boolean training, ReplayScheduler scheduler) {
+            this.envs = envs;
+            this.replayBuffer = replayBuffer;
+            this.transitionRecorder = transitionRecorder;
             this.agent = agent;
             this.training = training;
+            this.scheduler = scheduler;
         }
 
         @Override
-        public Object call() {
-            while (FlappyBird.trainStep < EXPLORE) {
-                batchSteps = game.runEnvironment(agent, training);
+        public Object call() throws IOException, InterruptedException {
+            try {
+                while (FlappyBird.trainStep.get() < EXPLORE && scheduler.awaitGameSteps()) {
+                    VecEnv.Result result = envs.runEnvironment(agent, training);
+                    if (transitionRecorder != null) {
+                        transitionRecorder.record(result.getSteps());
+                    }
+                    int gameStep = scheduler.addGameSteps(envs.size());
+                    if ((gameStep - envs.size()) / 5000 != gameStep / 5000) {
+                        replayBuffer.closeStep();
+                    }
+                }
+            } finally {
+                scheduler.shutdown();
             }
             return null;
         }
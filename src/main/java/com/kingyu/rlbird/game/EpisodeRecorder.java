@@ -0,0 +1,73 @@
+package com.kingyu.rlbird.game;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records the episodes played by {@link FlappyBird}s into a file, for {@link EpisodeReplayer}.
+ *
+ * <p>An episode is a function of its seed and its actions only, so that is what is recorded, one
+ * byte per action, next to the score, the total reward and the checksum of the last frame it
+ * ended with, which a replay must reproduce. The environments of a run can share one recorder.
+ *
+ * <p>The file starts with the seed of the run (long) then holds, per episode: the environment
+ * (int), the seed (long), the number of actions (int), the score (long), the total reward (float),
+ * the checksum of the last frame (long) and the actions.
+ *
+ * @author Kingyu
+ */
+public class EpisodeRecorder implements AutoCloseable {
+
+    private final DataOutputStream out;
+
+    /**
+     * Constructs an {@link EpisodeRecorder}.
+     *
+     * @param file    the file to record into, replaced if it exists
+     * @param runSeed the seed of the run, for reference
+     * @throws IOException if the file cannot be written
+     */
+    public EpisodeRecorder(Path file, long runSeed) throws IOException {
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeLong(runSeed);
+    }
+
+    /**
+     * Records a finished episode.
+     *
+     * @param envId    the environment the episode was played in
+     * @param seed     the seed of the episode
+     * @param actions  the index of every action, in order
+     * @param score    the score at the end of the episode
+     * @param reward   the sum of the rewards of the episode
+     * @param checksum the checksum of the last frame
+     */
+    public synchronized void record(int envId, long seed, byte[] actions, long score, float reward, long checksum) {
+        try {
+            out.writeInt(envId);
+            out.writeLong(seed);
+            out.writeInt(actions.length);
+            out.writeLong(score);
+            out.writeFloat(reward);
+            out.writeLong(checksum);
+            out.write(actions);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to record an episode", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,157 @@
+package com.kingyu.rlbird.game;
+
+import ai.djl.ndarray.NDManager;
+import com.kingyu.rlbird.game.render.NullRenderer;
+import com.kingyu.rlbird.rl.LruReplayBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays the episodes recorded by an {@link EpisodeRecorder} as fast as the game runs, without
+ * a window, an agent or observations, and checks that every episode ends exactly as recorded.
+ *
+ * <p>The same workload is thus replayed by every build, to compare the throughput of the game
+ * before and after a change.
+ *
+ * <p>Usage: {@code EpisodeReplayer <episode file> [repeats]}
+ *
+ * @author Kingyu
+ */
+public final class EpisodeReplayer {
+
+    private EpisodeReplayer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: EpisodeReplayer <episode file> [repeats]");
+            System.exit(1);
+        }
+        List<Episode> episodes = read(Paths.get(args[0]));
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        try (NDManager manager = NDManager.newBaseManager()) {
+            FlappyBird game = new FlappyBird(manager, new LruReplayBuffer(1, 1), new NullRenderer());
+            long steps = 0;
+            int mismatches = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < repeats; i++) {
+                for (Episode episode : episodes) {
+                    if (!replay(game, episode) && i == 0) {
+                        mismatches++;
+                        System.out.printf("Episode of env %d with seed %d did not end as recorded%n",
+                                episode.envId, episode.seed);
+                    }
+                    steps += episode.actions.length;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d episodes, %d steps in %.3f s, %.0f steps/s, %d mismatches%n",
+                    episodes.size() * repeats, steps, seconds, steps / seconds, mismatches);
+            if (mismatches > 0) {
+                System.exit(2);
+            }
+        }
+    }
+
+    /**
+     * Reads the episodes of a file written by {@link EpisodeRecorder}.
+     *
+     * @param file the file to read
+     * @return the episodes, in the order they ended
+     * @throws IOException if the file cannot be read
+     */
+    public static List<Episode> read(Path file) throws IOException {
+        List<Episode> episodes = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            in.readLong(); // the seed of the run
+            while (true) {
+                int envId;
+                try {
+                    envId = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                long seed = in.readLong();
+                byte[] actions = new byte[in.readInt()];
+                long score = in.readLong();
+                float reward = in.readFloat();
+                long checksum = in.readLong();
+                in.readFully(actions);
+                episodes.add(new Episode(envId, seed, actions, score, reward, checksum));
+            }
+        }
+        return episodes;
+    }
+
+    /**
+     * Plays an episode again in a game.
+     *
+     * @param game    the game to play the episode in
+     * @param episode the episode to play
+     * @return true if the episode ended as recorded, at its last action, with the same score,
+     *         total reward and last frame
+     */
+    public static boolean replay(FlappyBird game, Episode episode) {
+        game.startEpisode(episode.seed);
+        float reward = 0;
+        byte[] actions = episode.actions;
+        for (int i = 0; i < actions.length; i++) {
+            if (game.isGameOver()) {
+                return false;
+            }
+            game.reset();
+            game.play(actions[i]);
+            reward += game.getCurrentReward();
+        }
+        return game.isGameOver()
+                && game.getScore() == episode.score
+                && Float.floatToIntBits(reward) == Float.floatToIntBits(episode.reward)
+                && game.getFrameChecksum() == episode.checksum;
+    }
+
+    /**
+     * An episode read from a file.
+     */
+    public static final class Episode {
+        private final int envId;
+        private final long seed;
+        private final byte[] actions;
+        private final long score;
+        private final float reward;
+        private final long checksum;
+
+        private Episode(int envId, long seed, byte[] actions, long score, float reward, long checksum) {
+            this.envId = envId;
+            this.seed = seed;
+            this.actions = actions;
+            this.score = score;
+            this.reward = reward;
+            this.checksum = checksum;
+        }
+
+        public int getEnvId() {
+            return envId;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getLength() {
+            return actions.length;
+        }
+
+        public long getScore() {
+            return score;
+        }
+    }
+}
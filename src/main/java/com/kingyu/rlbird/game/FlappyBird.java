@@ -3,25 +3,33 @@ package com.kingyu.rlbird.game;
 import com.kingyu.rlbird.game.component.Bird;
 import com.kingyu.rlbird.game.component.Ground;
 import com.kingyu.rlbird.game.component.GameElementLayer;
+import com.kingyu.rlbird.game.render.Canvas;
+import com.kingyu.rlbird.game.render.GrayscaleRasterizer;
+import com.kingyu.rlbird.game.render.NullRenderer;
+import com.kingyu.rlbird.game.render.Renderer;
+import com.kingyu.rlbird.game.render.WindowRenderer;
+import com.kingyu.rlbird.metrics.Metrics;
 import com.kingyu.rlbird.rl.ActionSpace;
 import com.kingyu.rlbird.rl.LruReplayBuffer;
 import com.kingyu.rlbird.rl.ReplayBuffer;
+import com.kingyu.rlbird.rl.StepSink;
 import com.kingyu.rlbird.rl.agent.RlAgent;
+import com.kingyu.rlbird.rl.env.FrameStack;
+import com.kingyu.rlbird.rl.env.FrameStep;
 import com.kingyu.rlbird.rl.env.RlEnv;
 import ai.djl.ndarray.NDArray;
-import ai.djl.ndarray.NDArrays;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
 import com.kingyu.rlbird.util.Constant;
-import com.kingyu.rlbird.util.GameUtil;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.awt.*;
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
-import java.awt.image.BufferedImage;
+import com.kingyu.rlbird.util.EventLog;
+import com.kingyu.rlbird.util.NDArena;
+import com.kingyu.rlbird.util.NativeMemory;
+import com.kingyu.rlbird.util.Seeds;
+
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
 import static com.kingyu.rlbird.ai.TrainBird.OBSERVE;
 import static com.kingyu.rlbird.util.Constant.*;
@@ -30,24 +38,41 @@ import static com.kingyu.rlbird.util.Constant.*;
  * @author Kingyu
  */
 
-public class FlappyBird extends Frame implements RlEnv {
-    private static final long serialVersionUID = 1L;
-    private static final Logger logger = LoggerFactory.getLogger(FlappyBird.class);
+public class FlappyBird implements RlEnv {
+    private static final AtomicInteger nextEnvId = new AtomicInteger();
 
-    private static int gameState;
+    private int gameState;
     public static final int GAME_START = 1;
     public static final int GAME_OVER = 2;
 
     private Ground ground;
     private Bird bird;
     private GameElementLayer gameElement;
-    private boolean withGraphics;
 
     private final NDManager manager;
-    private final ReplayBuffer replayBuffer;
-    private BufferedImage currentImg;
-    private NDList currentObservation;
+    private final StepSink replayBuffer;
+    private final Renderer renderer;
+    private final GrayscaleRasterizer rasterizer;
+    private final byte[] currentFrame;
+    private final byte[] previousFrame;
+    private final byte[] pooledFrame;
+    private final FrameStack frameStack;
+    private final NDArena arena;
+    private final NDArray observation;
+    private final NDList currentObservation;
+    private final int envId;
+    private final SplittableRandom random;
+    private long episodeSeed;
+    private EpisodeRecorder recorder;
+    private byte[] episodeActions;
+    private int episodeLength;
+    private float episodeReward;
+    private boolean episodeStart;
+    private byte[][] stackedFrames;
+    private long lastEpisodeScore;
     private ActionSpace actionSpace;
+    private int actionRepeat = 1;
+    private boolean maxPool;
 
     /**
      * Constructs a {@link FlappyBird} with a basic {@link LruReplayBuffer}.
@@ -57,40 +82,73 @@ public class FlappyBird extends Frame implements RlEnv {
      * @param replayBufferSize the number of steps to hold in the buffer
      */
     public FlappyBird(NDManager manager, int batchSize, int replayBufferSize, boolean withGraphics) {
-        this(manager, new LruReplayBuffer(batchSize, replayBufferSize));
-        this.withGraphics = withGraphics;
-        if (this.withGraphics) {
-            initFrame();
-            this.setVisible(true);
-        }
-        actionSpace = new ActionSpace();
-        actionSpace.add(new NDList(manager.create(DO_NOTHING)));
-        actionSpace.add(new NDList(manager.create(FLAP)));
+        this(manager, new LruReplayBuffer(batchSize, replayBufferSize),
+                withGraphics ? new WindowRenderer() : new NullRenderer());
+    }
 
-        currentImg = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
-        currentObservation = createObservation(currentImg);
-        ground = new Ground();
-        gameElement = new GameElementLayer();
-        bird = new Bird();
-        setGameState(GAME_START);
+    /**
+     * Constructs a {@link FlappyBird} without graphics.
+     *
+     * @param manager      the manager for creating the game in
+     * @param replayBuffer the replay buffer, or other sink, to add the steps played to
+     */
+    public FlappyBird(NDManager manager, StepSink replayBuffer) {
+        this(manager, replayBuffer, new NullRenderer());
+    }
+
+    /**
+     * Constructs a {@link FlappyBird} with a generator split from {@link Seeds}.
+     *
+     * <p>The renderer is only for showing the game, the observations are drawn by a
+     * {@link GrayscaleRasterizer} whatever the renderer is.
+     *
+     * @param manager      the manager for creating the game in
+     * @param replayBuffer the replay buffer, or other sink, to add the steps played to
+     * @param renderer     the renderer to draw the frames with
+     */
+    public FlappyBird(NDManager manager, StepSink replayBuffer, Renderer renderer) {
+        this(manager, replayBuffer, renderer, Seeds.split());
     }
 
     /**
      * Constructs a {@link FlappyBird}.
      *
+     * <p>Each episode draws its seed from the generator, and its pipes from that seed only, so an
+     * episode is replayed exactly by {@link #startEpisode(long)} with its seed and the same actions.
+     *
      * @param manager      the manager for creating the game in
-     * @param replayBuffer the replay buffer for storing data
+     * @param replayBuffer the replay buffer, or other sink, to add the steps played to
+     * @param renderer     the renderer to draw the frames with
+     * @param random       the generator of the episode seeds
      */
-    public FlappyBird(NDManager manager, ReplayBuffer replayBuffer) {
+    public FlappyBird(NDManager manager, StepSink replayBuffer, Renderer renderer, SplittableRandom random) {
         this.manager = manager;
+        this.random = random;
         this.replayBuffer = replayBuffer;
+        this.renderer = renderer;
+        this.envId = nextEnvId.getAndIncrement();
+        this.rasterizer = new GrayscaleRasterizer(OBSERVATION_WIDTH, OBSERVATION_HEIGHT);
+        this.currentFrame = new byte[OBSERVATION_WIDTH * OBSERVATION_HEIGHT];
+        this.previousFrame = new byte[OBSERVATION_WIDTH * OBSERVATION_HEIGHT];
+        this.pooledFrame = new byte[OBSERVATION_WIDTH * OBSERVATION_HEIGHT];
+        this.frameStack = new FrameStack(4, OBSERVATION_HEIGHT, OBSERVATION_WIDTH);
+        this.arena = new NDArena(manager, "observation");
+        this.observation = arena.acquire(frameStack.getShape(), DataType.FLOAT32);
+        this.currentObservation = new NDList(observation);
+        actionSpace = new ActionSpace();
+        actionSpace.add(new NDList(manager.create(DO_NOTHING)));
+        actionSpace.add(new NDList(manager.create(FLAP)));
+
+        ground = new Ground();
+        gameElement = new GameElementLayer(this);
+        bird = new Bird(this);
+        startEpisode(random.nextLong());
     }
 
-    public static int gameStep = 0;
-    public static int trainStep = 0;
-    private static boolean currentTerminal = false;
-    private static float currentReward = 0.2f;
-    private String trainState = "observe";
+    public static final AtomicInteger gameStep = new AtomicInteger();
+    public static final AtomicInteger trainStep = new AtomicInteger();
+    private boolean currentTerminal = false;
+    private float currentReward = 0.2f;
 
     /**
      * {@inheritDoc}
@@ -106,15 +164,9 @@ public class FlappyBird extends Frame implements RlEnv {
         if (training) {
             batchSteps = this.getBatch();
         }
-        if (gameStep % 5000 == 0) {
+        if (gameStep.getAndIncrement() % 5000 == 0) {
             this.closeStep();
         }
-        if (gameStep <= OBSERVE) {
-            trainState = "observe";
-        } else {
-            trainState = "explore";
-        }
-        gameStep++;
         return batchSteps;
     }
 
@@ -122,43 +174,178 @@ public class FlappyBird extends Frame implements RlEnv {
      * {@inheritDoc}
      * action[0] == 1 : do nothing
      * action[1] == 1 : flap the bird
+     *
+     * <p>The action is played for {@link #setActionRepeat(int, boolean) actionRepeat} frames, or
+     * until the bird dies, and the step is given the sum of their rewards. Only the last frame is
+     * turned into an observation.
      */
     @Override
-    public void step(NDList action, boolean training) {
-        if (action.singletonOrThrow().getInt(1) == 1) {
-            bird.birdFlap();
+    public Step step(NDList action, boolean training) {
+        int actionIndex = action.singletonOrThrow().getInt(1);
+        float reward = 0;
+        int frames = 0;
+        while (true) {
+            if (maxPool) {
+                System.arraycopy(currentFrame, 0, previousFrame, 0, currentFrame.length);
+            }
+            play(actionIndex);
+            reward += currentReward;
+            frames++;
+            if (frames == actionRepeat || isGameOver()) {
+                break;
+            }
+            reset();
         }
-        stepFrame();
-        if (this.withGraphics) {
-            repaint();
-            try {
-                Thread.sleep(FPS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        byte[] frame = currentFrame;
+        if (maxPool && frames > 1) {
+            // the pixels of both frames, as objects may only be drawn in one of them
+            for (int i = 0; i < pooledFrame.length; i++) {
+                pooledFrame[i] = (currentFrame[i] & 0xFF) > (previousFrame[i] & 0xFF) ? currentFrame[i] : previousFrame[i];
             }
+            frame = pooledFrame;
         }
 
-        NDList preObservation = currentObservation;
-        currentObservation = createObservation(currentImg);
+        // the frames are never written once stacked, so consecutive steps share them
+        byte[][] preFrames = stackedFrames;
+        stackedFrames = Arrays.copyOfRange(preFrames, 1, preFrames.length + 1);
+        stackedFrames[stackedFrames.length - 1] = frame.clone();
+        createObservation(frame);
 
-        FlappyBirdStep step = new FlappyBirdStep(manager.newSubManager(),
-                preObservation, currentObservation, action, currentReward, currentTerminal);
+        FlappyBirdStep step = new FlappyBirdStep(manager, frameStack, envId, episodeStart,
+                preFrames, stackedFrames, action, actionIndex, reward, currentTerminal);
+        episodeStart = false;
         if (training) {
+            long start = System.nanoTime();
             replayBuffer.addStep(step);
+            Metrics.REPLAY_ADD.record(start);
         }
-        logger.info("GAME_STEP " + gameStep +
-                " / " + "TRAIN_STEP " + trainStep +
-                " / " + getTrainState() +
-                " / " + "ACTION " + (Arrays.toString(action.singletonOrThrow().toArray())) +
-                " / " + "REWARD " + step.getReward().getFloat() +
-                " / " + "SCORE " + getScore());
-        if (gameState == GAME_OVER) {
+        Metrics.ENV_STEPS.increment();
+        EventLog.step(envId, gameStep.get(), actionIndex, reward, getScore(), currentTerminal);
+        if (isGameOver()) {
+            lastEpisodeScore = getScore();
             restartGame();
         }
+        return step;
     }
 
     /**
-     * {@inheritDoc}
+     * Plays one frame of the game with an action, without any observation. Once the game is over,
+     * nothing happens until an episode is started.
+     *
+     * @param actionIndex 1 to flap the bird, 0 to do nothing
+     */
+    public void play(int actionIndex) {
+        if (actionIndex == 1) {
+            bird.birdFlap();
+        }
+        stepFrame();
+        if (episodeActions != null) {
+            if (episodeLength == episodeActions.length) {
+                episodeActions = Arrays.copyOf(episodeActions, episodeLength * 2);
+            }
+            episodeActions[episodeLength++] = (byte) actionIndex;
+            episodeReward += currentReward;
+            if (isGameOver()) {
+                recorder.record(envId, episodeSeed, Arrays.copyOf(episodeActions, episodeLength),
+                        getScore(), episodeReward, getFrameChecksum());
+                episodeActions = null;
+            }
+        }
+    }
+
+    /**
+     * Sets how many frames each action of {@link #step(NDList, boolean)} is played for. Every
+     * frame is drawn, but only the last one of an action is stacked into the observation and
+     * stored, which saves choosing an action, an observation and a replay step per frame.
+     *
+     * @param actionRepeat the number of frames to play each action for, 1 to play it once
+     * @param maxPool      true to observe the maximum of the last two frames of an action, so
+     *                     that nothing drawn in only one of them is missed
+     */
+    public void setActionRepeat(int actionRepeat, boolean maxPool) {
+        if (actionRepeat < 1) {
+            throw new IllegalArgumentException("Invalid action repeat " + actionRepeat);
+        }
+        this.actionRepeat = actionRepeat;
+        this.maxPool = maxPool;
+    }
+
+    /**
+     * Starts a new episode whose pipes are drawn from the given seed.
+     *
+     * @param seed the seed of the episode
+     */
+    public void startEpisode(long seed) {
+        episodeSeed = seed;
+        setGameState(GAME_START);
+        ground.reset();
+        gameElement.reset(new SplittableRandom(seed));
+        bird.reset();
+        resetObservation();
+        if (recorder != null) {
+            episodeActions = new byte[256];
+            episodeLength = 0;
+            episodeReward = 0;
+        }
+    }
+
+    /**
+     * Records every episode played from the current one on, if nothing was played in it yet, from
+     * the next one otherwise.
+     *
+     * @param recorder the recorder to record the episodes with, null to stop recording
+     */
+    public void setRecorder(EpisodeRecorder recorder) {
+        this.recorder = recorder;
+        episodeActions = recorder != null && episodeStart ? new byte[256] : null;
+        episodeLength = 0;
+        episodeReward = 0;
+    }
+
+    /**
+     * Returns whether the bird died in the current episode.
+     *
+     * @return true if the episode is over
+     */
+    public boolean isGameOver() {
+        return gameState == GAME_OVER;
+    }
+
+    /**
+     * Returns the seed the pipes of the current episode are drawn from.
+     *
+     * @return the seed of the current episode
+     */
+    public long getEpisodeSeed() {
+        return episodeSeed;
+    }
+
+    /**
+     * Returns a checksum of the pixels of the current frame.
+     *
+     * @return the CRC-32 of the current frame
+     */
+    public long getFrameChecksum() {
+        CRC32 crc = new CRC32();
+        crc.update(currentFrame, 0, currentFrame.length);
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the reward of the last frame played.
+     *
+     * @return the reward of the last frame
+     */
+    public float getCurrentReward() {
+        return currentReward;
+    }
+
+    /**
+     * Returns the current observation. The array is refilled in place by every step, so it is only
+     * valid until the next one: a step keeps its own observations with
+     * {@link Step#getPostObservation(NDManager)}.
+     *
+     * @return the current observation
      */
     @Override
     public NDList getObservation() {
@@ -175,17 +362,21 @@ public class FlappyBird extends Frame implements RlEnv {
 
     /**
      * {@inheritDoc}
+     *
+     * <p>A game whose steps go to a sink that keeps none, as an actor's, has no batch to give.
      */
     @Override
     public Step[] getBatch() {
-        return replayBuffer.getBatch();
+        return replayBuffer instanceof ReplayBuffer ? ((ReplayBuffer) replayBuffer).getBatch() : new Step[0];
     }
 
     /**
      * Close the steps in replayBuffer which are not pointed to.
      */
     public void closeStep() {
-        replayBuffer.closeStep();
+        if (replayBuffer instanceof ReplayBuffer) {
+            ((ReplayBuffer) replayBuffer).closeStep();
+        }
     }
 
     /**
@@ -193,6 +384,9 @@ public class FlappyBird extends Frame implements RlEnv {
      */
     @Override
     public void close() {
+        renderer.close();
+        arena.release(observation);
+        arena.close();
         manager.close();
     }
 
@@ -205,67 +399,138 @@ public class FlappyBird extends Frame implements RlEnv {
         currentTerminal = false;
     }
 
-    private final Queue<NDArray> imgQueue = new ArrayDeque<>(4);
-
     /**
-     * Convert image to CNN input.
-     * Copy the initial frame image, stack into NDList,
-     * then replace the fourth frame with the current frame to ensure that the batch picture is continuous.
+     * Convert frame to CNN input.
+     * Push the frame into the frame stack, which drops the oldest frame,
+     * then stack the four frames into the observation of the game, which is refilled in place
+     * rather than created every step.
      *
-     * @param currentImg the image of current frame
+     * @param currentFrame the grayscale pixels of current frame
      * @return the CNN input
      */
-    public NDList createObservation(BufferedImage currentImg) {
-        NDArray observation = GameUtil.imgPreprocess(currentImg);
-        if (imgQueue.isEmpty()) {
-            for (int i = 0; i < 4; i++) {
-                imgQueue.offer(observation);
-            }
-            return new NDList(NDArrays.stack(new NDList(observation, observation, observation, observation), 1));
-        } else {
-            imgQueue.remove();
-            imgQueue.offer(observation);
-            NDArray[] buf = new NDArray[4];
-            int i = 0;
-            for (NDArray nd : imgQueue) {
-                buf[i++] = nd;
-            }
-            return new NDList(NDArrays.stack(new NDList(buf[0], buf[1], buf[2], buf[3]), 1));
-        }
+    public NDList createObservation(byte[] currentFrame) {
+        frameStack.push(currentFrame);
+        frameStack.copyTo(observation);
+        return currentObservation;
     }
 
-    static final class FlappyBirdStep implements RlEnv.Step {
-        private final NDManager manager;
-        private final NDList preObservation;
-        private final NDList postObservation;
+    /**
+     * Start the observation of a new episode from the current frame, so that the stacked frames
+     * never mix two episodes.
+     */
+    private void resetObservation() {
+        rasterizer.rasterize(this, currentFrame);
+        frameStack.reset(currentFrame);
+        frameStack.copyTo(observation);
+        stackedFrames = new byte[frameStack.getDepth()][];
+        Arrays.fill(stackedFrames, currentFrame.clone());
+        episodeStart = true;
+    }
+
+    /**
+     * A step of the game, which only keeps the frames of its observations. The observations and the
+     * reward are created on demand: in the manager given, or for the methods without one in a
+     * manager of the step created by the first of them, counted by {@link NativeMemory} until the
+     * step is closed.
+     */
+    static final class FlappyBirdStep implements FrameStep {
+        private static final String SITE = "step";
+
+        private final NDManager parentManager;
+        private final FrameStack frameStack;
+        private final int envId;
+        private final boolean episodeStart;
+        private final byte[][] preFrames;
+        private final byte[][] postFrames;
         private final NDList action;
+        private final int actionIndex;
         private final float reward;
         private final boolean terminal;
-
-
-        private FlappyBirdStep(NDManager manager, NDList preObservation, NDList postObservation, NDList action, float reward, boolean terminal) {
-            this.manager = manager;
-            this.preObservation = preObservation;
-            this.postObservation = postObservation;
+        private NDManager manager;
+        private NDList preObservation;
+        private NDList postObservation;
+        private NDArray rewardArray;
+
+        private FlappyBirdStep(NDManager parentManager, FrameStack frameStack, int envId, boolean episodeStart,
+                               byte[][] preFrames, byte[][] postFrames,
+                               NDList action, int actionIndex, float reward, boolean terminal) {
+            this.parentManager = parentManager;
+            this.frameStack = frameStack;
+            this.envId = envId;
+            this.episodeStart = episodeStart;
+            this.preFrames = preFrames;
+            this.postFrames = postFrames;
             this.action = action;
+            this.actionIndex = actionIndex;
             this.reward = reward;
             this.terminal = terminal;
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getEnvId() {
+            return envId;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isEpisodeStart() {
+            return episodeStart;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public byte[] getPreFrame() {
+            return preFrames[preFrames.length - 1];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public byte[] getPostFrame() {
+            return postFrames[postFrames.length - 1];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getActionIndex() {
+            return actionIndex;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public float getRewardValue() {
+            return reward;
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
         public NDList getPreObservation(NDManager manager) {
-            preObservation.attach(manager);
-            return preObservation;
+            return new NDList(frameStack.toNDArray(preFrames, manager));
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public NDList getPreObservation() {
+        public synchronized NDList getPreObservation() {
+            if (preObservation == null) {
+                NativeMemory.allocate(SITE, observationBytes());
+                preObservation = new NDList(frameStack.toNDArray(preFrames, getManager()));
+            }
             return preObservation;
         }
 
@@ -274,25 +539,30 @@ public class FlappyBird extends Frame implements RlEnv {
          */
         @Override
         public NDList getPostObservation(NDManager manager) {
-            postObservation.attach(manager);
-            return postObservation;
+            return new NDList(frameStack.toNDArray(postFrames, manager));
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public NDList getPostObservation() {
+        public synchronized NDList getPostObservation() {
+            if (postObservation == null) {
+                NativeMemory.allocate(SITE, observationBytes());
+                postObservation = new NDList(frameStack.toNDArray(postFrames, getManager()));
+            }
             return postObservation;
         }
 
-
         /**
          * {@inheritDoc}
          */
         @Override
-        public NDManager getManager() {
-            return this.manager;
+        public synchronized NDManager getManager() {
+            if (manager == null) {
+                manager = parentManager.newSubManager();
+            }
+            return manager;
         }
 
         /**
@@ -307,8 +577,12 @@ public class FlappyBird extends Frame implements RlEnv {
          * {@inheritDoc}
          */
         @Override
-        public NDArray getReward() {
-            return manager.create(reward);
+        public synchronized NDArray getReward() {
+            if (rewardArray == null) {
+                NativeMemory.allocate(SITE, Float.BYTES);
+                rewardArray = getManager().create(reward);
+            }
+            return rewardArray;
         }
 
         /**
@@ -323,74 +597,93 @@ public class FlappyBird extends Frame implements RlEnv {
          * {@inheritDoc}
          */
         @Override
-        public void close() {
-            this.manager.close();
+        public synchronized void close() {
+            if (manager == null) {
+                return;
+            }
+            manager.close();
+            manager = null;
+            if (preObservation != null) {
+                NativeMemory.free(SITE, observationBytes());
+                preObservation = null;
+            }
+            if (postObservation != null) {
+                NativeMemory.free(SITE, observationBytes());
+                postObservation = null;
+            }
+            if (rewardArray != null) {
+                NativeMemory.free(SITE, Float.BYTES);
+                rewardArray = null;
+            }
+        }
+
+        private long observationBytes() {
+            return frameStack.getShape().size() * Float.BYTES;
         }
     }
 
     /**
-     * Draw one frame by performing all elements' draw function.
+     * Run one frame: move the bird, draw the frame and the observation, then move the ground and the pipes.
      */
     public void stepFrame() {
-        Graphics bufG = currentImg.getGraphics();
-        bufG.setColor(Constant.BG_COLOR);
-        bufG.fillRect(0, 0, Constant.FRAME_WIDTH, Constant.FRAME_HEIGHT);
-        ground.draw(bufG, bird);
-        bird.draw(bufG);
-        gameElement.draw(bufG, bird);
+        bird.update();
+        long start = System.nanoTime();
+        renderer.render(this);
+        Metrics.RENDER.record(start);
+        start = System.nanoTime();
+        rasterizer.rasterize(this, currentFrame);
+        Metrics.RASTERIZE.record(start);
+        ground.update(bird);
+        gameElement.update(bird);
     }
 
     /**
-     * Initialize the game frame
+     * Draw the current frame by performing all elements' draw function.
+     *
+     * @param canvas the canvas to draw on
      */
-    private void initFrame() {
-        setSize(FRAME_WIDTH, FRAME_HEIGHT);
-        setTitle(GAME_TITLE);
-        setLocation(FRAME_X, FRAME_Y);
-        setResizable(false);
-        setVisible(true);
-        addWindowListener(new WindowAdapter() {
-            @Override
-            public void windowClosing(WindowEvent e) {
-                System.exit(0);
-            }
-        });
+    public void draw(Canvas canvas) {
+        canvas.clear(Constant.BG_COLOR);
+        ground.draw(canvas);
+        bird.draw(canvas);
+        gameElement.draw(canvas, bird);
     }
 
     /**
      * Restart game
      */
     private void restartGame() {
-        setGameState(GAME_START);
-        gameElement.reset();
-        bird.reset();
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public void update(Graphics g) {
-        g.drawImage(currentImg, 0, 0, null);
+        startEpisode(random.nextLong());
     }
 
-    public static void setGameState(int gameState) {
-        FlappyBird.gameState = gameState;
+    public void setGameState(int gameState) {
+        this.gameState = gameState;
     }
 
     public String getTrainState() {
-        return this.trainState;
+        return gameStep.get() <= OBSERVE ? "observe" : "explore";
     }
 
-    public static void setCurrentTerminal(boolean currentTerminal) {
-        FlappyBird.currentTerminal = currentTerminal;
+    public void setCurrentTerminal(boolean currentTerminal) {
+        this.currentTerminal = currentTerminal;
     }
 
-    public static void setCurrentReward(float currentReward) {
-        FlappyBird.currentReward = currentReward;
+    public void setCurrentReward(float currentReward) {
+        this.currentReward = currentReward;
     }
 
     public long getScore() {
         return this.bird.getCurrentScore();
     }
+
+    /**
+     * Returns the final score of the last episode ended by {@link #step(NDList, boolean)}, which
+     * restarts the game as soon as the bird dies, with every pipe passed in the frames of that
+     * step.
+     *
+     * @return the score of the last episode ended, 0 if none
+     */
+    public long getLastEpisodeScore() {
+        return lastEpisodeScore;
+    }
 }
@@ -1,11 +1,9 @@
 package com.kingyu.rlbird.game.component;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
-
 import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.game.render.Canvas;
+import com.kingyu.rlbird.game.render.Sprite;
 import com.kingyu.rlbird.util.Constant;
-import com.kingyu.rlbird.util.GameUtil;
 
 /**
  * 小鸟类，小鸟的绘制与飞行逻辑都在此类
@@ -22,42 +20,33 @@ public class Bird {
     public static final int BIRD_FALL = 1;
     public static final int BIRD_DEAD = 2;
 
-    private final Rectangle birdCollisionRect;
+    private final CollisionRect birdCollisionRect;
     public static final int RECT_DESCALE = 2; // 碰撞矩形宽高的补偿参数
 
+    private final FlappyBird game;
     private final ScoreCounter scoreCounter;
-    static BufferedImage birdImages;
-
-    public static final int BIRD_WIDTH;
-    public static final int BIRD_HEIGHT;
 
-    static {
-        birdImages = GameUtil.loadBufferedImage(Constant.BIRDS_IMG_PATH);
-        assert birdImages != null;
-        BIRD_WIDTH = birdImages.getWidth();
-        BIRD_HEIGHT = birdImages.getHeight();
-    }
+    public static final int BIRD_WIDTH = Sprite.BIRD.getWidth();
+    public static final int BIRD_HEIGHT = Sprite.BIRD.getHeight();
 
-    public Bird() {
-        scoreCounter = ScoreCounter.getInstance();
+    public Bird(FlappyBird game) {
+        this.game = game;
+        scoreCounter = new ScoreCounter(game);
         x = Constant.FRAME_WIDTH >> 2;
         y = Constant.FRAME_HEIGHT >> 1;
 
         int rectX = x - (BIRD_WIDTH >> 1);
         int rectY = y - (BIRD_HEIGHT >> 1) + RECT_DESCALE * 2;
-        birdCollisionRect = new Rectangle(rectX + RECT_DESCALE, rectY + RECT_DESCALE * 2, BIRD_WIDTH - RECT_DESCALE * 3,
+        birdCollisionRect = new CollisionRect(rectX + RECT_DESCALE, rectY + RECT_DESCALE * 2, BIRD_WIDTH - RECT_DESCALE * 3,
                 BIRD_HEIGHT - RECT_DESCALE * 4); // 碰撞矩形的坐标与小鸟相同
     }
 
-    public void draw(Graphics g) {
+    public void update() {
         movement();
-        drawBirdImg(g);
-//        g.setColor(Color.white);
-//        g.drawRect((int) birdCollisionRect.getX(), (int)birdCollisionRect.getY(), (int) birdCollisionRect.getWidth(), (int) birdCollisionRect.getHeight());
     }
 
-    public void drawBirdImg(Graphics g) {
-        g.drawImage(birdImages, x - (BIRD_WIDTH >> 1), y - (BIRD_HEIGHT >> 1), null);
+    public void draw(Canvas canvas) {
+        canvas.drawSprite(Sprite.BIRD, x - (BIRD_WIDTH >> 1), y - (BIRD_HEIGHT >> 1));
     }
 
     public static final int ACC_FLAP = 15; // players speed on flapping
@@ -74,7 +63,7 @@ public class Bird {
         birdCollisionRect.y = birdCollisionRect.y - velocity;
         if (birdCollisionRect.y < GameElementLayer.MIN_HEIGHT ||
                 birdCollisionRect.y > GameElementLayer.MAX_HEIGHT + GameElementLayer.VERTICAL_INTERVAL) {
-            FlappyBird.setCurrentReward(0.1f);
+            game.setCurrentReward(0.1f);
         }
         if (birdCollisionRect.y < Constant.WINDOW_BAR_HEIGHT) {
             die();
@@ -91,9 +80,9 @@ public class Bird {
     }
 
     public void die() {
-        FlappyBird.setCurrentReward(-1f);
-        FlappyBird.setCurrentTerminal(true);
-        FlappyBird.setGameState(FlappyBird.GAME_OVER);
+        game.setCurrentReward(-1f);
+        game.setCurrentTerminal(true);
+        game.setGameState(FlappyBird.GAME_OVER);
         birdState = BIRD_DEAD;
     }
 
@@ -105,8 +94,7 @@ public class Bird {
         birdState = BIRD_READY;
         y = Constant.FRAME_HEIGHT >> 1;
         velocity = 0;
-        int ImgHeight = birdImages.getHeight();
-        birdCollisionRect.y = y + RECT_DESCALE * 4 - ImgHeight / 2;
+        birdCollisionRect.y = y + RECT_DESCALE * 4 - BIRD_HEIGHT / 2;
         scoreCounter.reset();
     }
 
@@ -114,11 +102,15 @@ public class Bird {
         return scoreCounter.getCurrentScore();
     }
 
+    public ScoreCounter getScoreCounter() {
+        return scoreCounter;
+    }
+
     public int getBirdX() {
         return x;
     }
 
-    public Rectangle getBirdCollisionRect() {
+    public CollisionRect getBirdCollisionRect() {
         return birdCollisionRect;
     }
 }
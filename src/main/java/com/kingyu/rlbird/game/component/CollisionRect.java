@@ -0,0 +1,37 @@
+package com.kingyu.rlbird.game.component;
+
+/**
+ * 碰撞矩形，代替java.awt.Rectangle，使游戏逻辑不依赖AWT
+ *
+ * @author Kingyu
+ */
+public class CollisionRect {
+    public int x;
+    public int y;
+    public int width;
+    public int height;
+
+    public CollisionRect() {
+    }
+
+    public CollisionRect(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 判断两个矩形是否相交，与java.awt.Rectangle#intersects一致
+     *
+     * @param r 另一个矩形
+     * @return 相交返回true
+     */
+    public boolean intersects(CollisionRect r) {
+        if (width <= 0 || height <= 0 || r.width <= 0 || r.height <= 0) {
+            return false;
+        }
+        return r.x < x + width && x < r.x + r.width
+                && r.y < y + height && y < r.y + r.height;
+    }
+}
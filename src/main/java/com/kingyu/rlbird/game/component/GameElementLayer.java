@@ -1,10 +1,11 @@
 package com.kingyu.rlbird.game.component;
 
-import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.game.render.Canvas;
 import com.kingyu.rlbird.util.Constant;
 import com.kingyu.rlbird.util.GameUtil;
 import com.kingyu.rlbird.game.component.Pipe.PipePool;
@@ -16,24 +17,36 @@ import com.kingyu.rlbird.game.component.Pipe.PipePool;
  */
 
 public class GameElementLayer {
+    private final FlappyBird game;
     private final List<Pipe> pipes; // 水管的容器
-    public GameElementLayer() {
+    private final PipePool pipePool; // 水管的对象池
+    private SplittableRandom random; // 本局水管高度的随机数生成器
+
+    public GameElementLayer(FlappyBird game) {
+        this.game = game;
         pipes = new ArrayList<>();
+        pipePool = new PipePool();
+    }
+
+    public void draw(Canvas canvas, Bird bird) {
+        for (Pipe pipe : pipes) {
+            pipe.draw(canvas);
+        }
+        bird.draw(canvas);
     }
 
-    public void draw(Graphics g, Bird bird) {
-        // 遍历水管容器，如果可见则绘制，不可见则归还
+    public void update(Bird bird) {
+        // 遍历水管容器，如果可见则移动，不可见则归还
         for (int i = 0; i < pipes.size(); i++) {
             Pipe pipe = pipes.get(i);
             if (pipe.isVisible()) {
-                pipe.draw(g, bird);
+                pipe.update(bird);
             } else {
                 Pipe remove = pipes.remove(i);
-                PipePool.giveBack(remove);
+                pipePool.giveBack(remove);
                 i--;
             }
         }
-        bird.drawBirdImg(g);
         isCollideBird(bird);
         generatePipe(bird);
     }
@@ -52,13 +65,13 @@ public class GameElementLayer {
         }
         if (pipes.size() == 0) {
             // 若容器为空，则添加一对水管
-            int topHeight = GameUtil.getRandomNumber(MIN_HEIGHT, MAX_HEIGHT + 1); // 随机生成水管高度
+            int topHeight = GameUtil.getRandomNumber(random, MIN_HEIGHT, MAX_HEIGHT + 1); // 随机生成水管高度
 
-            Pipe top = PipePool.get();
+            Pipe top = pipePool.get();
             top.setAttribute(Constant.FRAME_WIDTH, -Pipe.TOP_PIPE_LENGTHENING,
                     topHeight + Pipe.TOP_PIPE_LENGTHENING, Pipe.TYPE_TOP_NORMAL, true);
 
-            Pipe bottom = PipePool.get();
+            Pipe bottom = pipePool.get();
             bottom.setAttribute(Constant.FRAME_WIDTH, topHeight + VERTICAL_INTERVAL,
                     Constant.FRAME_HEIGHT - topHeight - VERTICAL_INTERVAL, Pipe.TYPE_BOTTOM_NORMAL, true);
 
@@ -72,12 +85,12 @@ public class GameElementLayer {
             if (pipes.size() >= PipePool.FULL_PIPE
                     && currentDistance <= SCORE_DISTANCE + Pipe.PIPE_WIDTH * 3 / 2
                     && currentDistance > SCORE_DISTANCE + Pipe.PIPE_WIDTH * 3 / 2 - Constant.GAME_SPEED) {
-                FlappyBird.setCurrentReward(0.8f);
+                game.setCurrentReward(0.8f);
             }
             if (pipes.size() >= PipePool.FULL_PIPE
                     && currentDistance <= SCORE_DISTANCE
                     && currentDistance > SCORE_DISTANCE - Constant.GAME_SPEED) {
-                ScoreCounter.getInstance().score(bird);
+                bird.getScoreCounter().score(bird);
             }
             if (lastPipe.isInFrame()) {
                 addNormalPipe(lastPipe);
@@ -91,14 +104,14 @@ public class GameElementLayer {
      * @param lastPipe 最后一根水管
      */
     private void addNormalPipe(Pipe lastPipe) {
-        int topHeight = GameUtil.getRandomNumber(MIN_HEIGHT, MAX_HEIGHT + 1); // 随机生成水管高度
+        int topHeight = GameUtil.getRandomNumber(random, MIN_HEIGHT, MAX_HEIGHT + 1); // 随机生成水管高度
         int x = lastPipe.getX() + HORIZONTAL_INTERVAL; // 新水管的x坐标 = 最后一对水管的x坐标 + 水管的间隔
 
-        Pipe top = PipePool.get();
+        Pipe top = pipePool.get();
         top.setAttribute(x, -Pipe.TOP_PIPE_LENGTHENING, topHeight + Pipe.TOP_PIPE_LENGTHENING,
                 Pipe.TYPE_TOP_NORMAL, true);
 
-        Pipe bottom = PipePool.get();
+        Pipe bottom = pipePool.get();
         bottom.setAttribute(x, topHeight + VERTICAL_INTERVAL, Constant.FRAME_HEIGHT - topHeight - VERTICAL_INTERVAL,
                 Pipe.TYPE_BOTTOM_NORMAL, true);
 
@@ -123,9 +136,15 @@ public class GameElementLayer {
         }
     }
 
-    public void reset() {
+    /**
+     * 开始新的一局：归还所有水管，之后的水管高度由给定的随机数生成器生成
+     *
+     * @param random 本局的随机数生成器
+     */
+    public void reset(SplittableRandom random) {
+        this.random = random;
         for (Pipe pipe : pipes) {
-            PipePool.giveBack(pipe);
+            pipePool.giveBack(pipe);
         }
         pipes.clear();
     }
@@ -1,10 +1,8 @@
 package com.kingyu.rlbird.game.component;
 
-import java.awt.Graphics;
-import java.awt.image.BufferedImage;
-
+import com.kingyu.rlbird.game.render.Canvas;
+import com.kingyu.rlbird.game.render.Sprite;
 import com.kingyu.rlbird.util.Constant;
-import com.kingyu.rlbird.util.GameUtil;
 
 /**
  *
@@ -12,8 +10,6 @@ import com.kingyu.rlbird.util.GameUtil;
  */
 public class Ground {
 
-	private static final BufferedImage BackgroundImg;
-
 	private final int velocity;
 	private int layerX;
 
@@ -21,29 +17,30 @@ public class Ground {
 		this.velocity = Constant.GAME_SPEED;
 		this.layerX = 0;
 	}
-	public static final int GROUND_HEIGHT;
+	public static final int GROUND_WIDTH = Sprite.GROUND.getWidth();
+	public static final int GROUND_HEIGHT = Sprite.GROUND.getHeight();
+
+	public void draw(Canvas canvas) {
+		int count = Constant.FRAME_WIDTH / GROUND_WIDTH + 2; // 根据窗口宽度得到图片的绘制次数
+		for (int i = 0; i < count; i++) {
+			canvas.drawSprite(Sprite.GROUND, GROUND_WIDTH * i - layerX, Constant.FRAME_HEIGHT - GROUND_HEIGHT);
+		}
+	}
 
-	static {
-		BackgroundImg = GameUtil.loadBufferedImage(Constant.BG_IMG_PATH);
-		assert BackgroundImg != null;
-		GROUND_HEIGHT = BackgroundImg.getHeight();
+	public void reset() {
+		layerX = 0;
 	}
 
-	public void draw(Graphics g, Bird bird) {
+	public void update(Bird bird) {
 		if (bird.isDead()) {
 			return;
 		}
-		int imgWidth = BackgroundImg.getWidth();
-		int count = Constant.FRAME_WIDTH / imgWidth + 2; // 根据窗口宽度得到图片的绘制次数
-		for (int i = 0; i < count; i++) {
-			g.drawImage(BackgroundImg, imgWidth * i - layerX, Constant.FRAME_HEIGHT - GROUND_HEIGHT, null);
-		}
 		movement();
 	}
 
 	private void movement() {
 		layerX += velocity;
-		if (layerX > BackgroundImg.getWidth())
+		if (layerX > GROUND_WIDTH)
 			layerX = 0;
 	}
 }
@@ -1,12 +1,11 @@
 package com.kingyu.rlbird.game.component;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.kingyu.rlbird.game.render.Canvas;
+import com.kingyu.rlbird.game.render.Sprite;
 import com.kingyu.rlbird.util.Constant;
-import com.kingyu.rlbird.util.GameUtil;
 
 /**
  * 水管类
@@ -14,21 +13,11 @@ import com.kingyu.rlbird.util.GameUtil;
  * @author Kingyu
  */
 public class Pipe {
-    static BufferedImage[] images; 
-
-    static {
-        final int PIPE_IMAGE_COUNT = 3;
-        images = new BufferedImage[PIPE_IMAGE_COUNT];
-        for (int i = 0; i < PIPE_IMAGE_COUNT; i++) {
-            images[i] = GameUtil.loadBufferedImage(Constant.PIPE_IMG_PATH[i]);
-        }
-    }
-
     // 水管图片的宽高
-    public static final int PIPE_WIDTH = images[0].getWidth();
-    public static final int PIPE_HEIGHT = images[0].getHeight();
-    public static final int PIPE_HEAD_WIDTH = images[1].getWidth();
-    public static final int PIPE_HEAD_HEIGHT = images[1].getHeight();
+    public static final int PIPE_WIDTH = Sprite.PIPE_BODY.getWidth();
+    public static final int PIPE_HEIGHT = Sprite.PIPE_BODY.getHeight();
+    public static final int PIPE_HEAD_WIDTH = Sprite.PIPE_TOP_HEAD.getWidth();
+    public static final int PIPE_HEAD_HEIGHT = Sprite.PIPE_TOP_HEAD.getHeight();
 
     private int x, y; // 水管相对于元素层的坐标
     private final int width; // 水管的宽度
@@ -40,12 +29,12 @@ public class Pipe {
     public static final int TYPE_TOP_NORMAL = 0;
     public static final int TYPE_BOTTOM_NORMAL = 1;
     private final int velocity;
-    Rectangle pipeCollisionRect;
+    CollisionRect pipeCollisionRect;
 
     public Pipe() {
         this.velocity = Constant.GAME_SPEED;
         this.width = PIPE_WIDTH;
-        pipeCollisionRect = new Rectangle();
+        pipeCollisionRect = new CollisionRect();
         pipeCollisionRect.width = PIPE_WIDTH;
     }
 
@@ -76,51 +65,51 @@ public class Pipe {
         pipeCollisionRect.height = height;
     }
 
-    public void draw(Graphics g, Bird bird) {
+    public void draw(Canvas canvas) {
         switch (this.type) {
             case TYPE_TOP_NORMAL:
-                drawTopNormal(g);
+                drawTopNormal(canvas);
                 break;
             case TYPE_BOTTOM_NORMAL:
-                drawBottomNormal(g);
+                drawBottomNormal(canvas);
                 break;
         }
+    }
+
+    public void update(Bird bird) {
         if (bird.isDead()) {
             return;
         }
         movement();
-//      //绘制碰撞矩形
-//        g.setColor(Color.white);
-//        g.drawRect((int) pipeRect.getX(), (int) pipeRect.getY(), (int) pipeRect.getWidth(), (int) pipeRect.getHeight());
     }
 
     // 上方管道加长
     public static final int TOP_PIPE_LENGTHENING = 100;
 
     // 绘制从上往下的普通水管
-    private void drawTopNormal(Graphics g) {
+    private void drawTopNormal(Canvas canvas) {
         // 拼接的个数
         int count = (height - PIPE_HEAD_HEIGHT) / PIPE_HEIGHT + 1; // 取整+1
         // 绘制水管的主体
         for (int i = 0; i < count; i++) {
-            g.drawImage(images[0], x, y + i * PIPE_HEIGHT, null);
+            canvas.drawSprite(Sprite.PIPE_BODY, x, y + i * PIPE_HEIGHT);
         }
         // 绘制水管的顶部
-        g.drawImage(images[1], x - ((PIPE_HEAD_WIDTH - width) >> 1),
-                height - TOP_PIPE_LENGTHENING - PIPE_HEAD_HEIGHT, null); // 水管头部与水管主体的宽度不同，x坐标需要处理
+        canvas.drawSprite(Sprite.PIPE_TOP_HEAD, x - ((PIPE_HEAD_WIDTH - width) >> 1),
+                height - TOP_PIPE_LENGTHENING - PIPE_HEAD_HEIGHT); // 水管头部与水管主体的宽度不同，x坐标需要处理
     }
 
     // 绘制从下往上的普通水管
-    private void drawBottomNormal(Graphics g) {
+    private void drawBottomNormal(Canvas canvas) {
         // 拼接的个数
         int count = (height - PIPE_HEAD_HEIGHT - Ground.GROUND_HEIGHT) / PIPE_HEIGHT + 1;
         // 绘制水管的主体
         for (int i = 0; i < count; i++) {
-            g.drawImage(images[0], x, Constant.FRAME_HEIGHT - PIPE_HEIGHT - Ground.GROUND_HEIGHT - i * PIPE_HEIGHT,
-                    null);
+            canvas.drawSprite(Sprite.PIPE_BODY, x,
+                    Constant.FRAME_HEIGHT - PIPE_HEIGHT - Ground.GROUND_HEIGHT - i * PIPE_HEIGHT);
         }
         // 绘制水管的顶部
-        g.drawImage(images[2], x - ((PIPE_HEAD_WIDTH - width) >> 1), Constant.FRAME_HEIGHT - height, null);
+        canvas.drawSprite(Sprite.PIPE_BOTTOM_HEAD, x - ((PIPE_HEAD_WIDTH - width) >> 1), Constant.FRAME_HEIGHT - height);
     }
 
     private void movement() {
@@ -142,7 +131,7 @@ public class Pipe {
         return x;
     }
 
-    public Rectangle getPipeCollisionRect() {
+    public CollisionRect getPipeCollisionRect() {
         return pipeCollisionRect;
     }
 
@@ -151,7 +140,7 @@ public class Pipe {
     }
 
     static class PipePool {
-        private static final List<Pipe> pool = new ArrayList<>();
+        private final List<Pipe> pool = new ArrayList<>();
 
         // 容器内水管数量 = 窗口可容纳的水管数量+2， 由窗口宽度、水管宽度、水管间距算得
         public static final int FULL_PIPE = (Constant.FRAME_WIDTH
@@ -159,7 +148,7 @@ public class Pipe {
         public static final int MAX_PIPE_COUNT = 30; // 对象池中对象的最大个数
 
         // 初始化水管容器
-        static {
+        PipePool() {
             for (int i = 0; i < FULL_PIPE; i++) {
                 pool.add(new Pipe());
             }
@@ -170,7 +159,7 @@ public class Pipe {
          *
          * @return pipe from pipePool
          */
-        public static Pipe get() {
+        public Pipe get() {
             int size = pool.size();
             if (size > 0) {
                 return pool.remove(size - 1); // 移除并返回最后一个
@@ -182,7 +171,7 @@ public class Pipe {
         /**
          * 归还对象给容器
          */
-        public static void giveBack(Pipe pipe) {
+        public void giveBack(Pipe pipe) {
             if (pool.size() < MAX_PIPE_COUNT) {
                 pool.add(pipe);
             }
@@ -3,25 +3,22 @@ package com.kingyu.rlbird.game.component;
 import com.kingyu.rlbird.game.FlappyBird;
 
 /**
- * 记分类, 单例类
+ * 记分类, 每局游戏一个
  *
  * @author Kingyu
  */
 public class ScoreCounter {
-    private static final ScoreCounter scoreCounter = new ScoreCounter();
+    private final FlappyBird game;
 
     private long score = 0;
 
-    private ScoreCounter() {
-    }
-
-    public static ScoreCounter getInstance() {
-        return scoreCounter;
+    public ScoreCounter(FlappyBird game) {
+        this.game = game;
     }
 
     public void score(Bird bird) {
         if (!bird.isDead()) {
-            FlappyBird.setCurrentReward(1f);
+            game.setCurrentReward(1f);
             score += 1;
         }
     }
@@ -0,0 +1,28 @@
+package com.kingyu.rlbird.game.render;
+
+/**
+ * The surface the game elements draw themselves on.
+ *
+ * <p>It only knows about {@link Sprite}s, so that the game logic does not depend on how (or
+ * whether) a frame is actually produced.
+ *
+ * @author Kingyu
+ */
+public interface Canvas {
+
+    /**
+     * Fills the whole canvas with a color.
+     *
+     * @param rgb the color in 0xRRGGBB
+     */
+    void clear(int rgb);
+
+    /**
+     * Draws a sprite with its top left corner at the given position.
+     *
+     * @param sprite the sprite to draw
+     * @param x      x coordinate in game pixels
+     * @param y      y coordinate in game pixels
+     */
+    void drawSprite(Sprite sprite, int x, int y);
+}
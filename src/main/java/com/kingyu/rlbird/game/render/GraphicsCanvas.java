@@ -0,0 +1,43 @@
+package com.kingyu.rlbird.game.render;
+
+import java.awt.Color;
+import java.awt.Graphics;
+
+/**
+ * A {@link Canvas} backed by an AWT {@link Graphics}.
+ *
+ * @author Kingyu
+ */
+final class GraphicsCanvas implements Canvas {
+
+    private final Graphics graphics;
+    private final int width;
+    private final int height;
+
+    GraphicsCanvas(Graphics graphics, int width, int height) {
+        this.graphics = graphics;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear(int rgb) {
+        graphics.setColor(new Color(rgb));
+        graphics.fillRect(0, 0, width, height);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawSprite(Sprite sprite, int x, int y) {
+        graphics.drawImage(SpriteSheet.getImage(sprite), x, y, null);
+    }
+
+    void dispose() {
+        graphics.dispose();
+    }
+}
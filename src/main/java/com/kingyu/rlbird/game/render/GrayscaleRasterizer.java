@@ -0,0 +1,224 @@
+package com.kingyu.rlbird.game.render;
+
+import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.util.Constant;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Draws the game straight into a low resolution grayscale frame for the observations.
+ *
+ * <p>The result is what drawing the full frame, converting it to grayscale and resizing it
+ * bilinearly would give. A bilinear resize only reads the two source columns and the two source
+ * rows around the center of every target pixel, so only the game pixels on those rows and
+ * columns are drawn, on a small grid of samples. The sprites are converted to grayscale
+ * intensity and transparency masks once, when the class is loaded.
+ *
+ * @author Kingyu
+ */
+public class GrayscaleRasterizer implements Canvas {
+
+    private static final Map<Sprite, Mask> masks = new EnumMap<>(Sprite.class);
+
+    static {
+        for (Sprite sprite : Sprite.values()) {
+            masks.put(sprite, new Mask(SpriteSheet.getImage(sprite)));
+        }
+    }
+
+    private final int width;
+    private final int height;
+
+    // the game pixel coordinates which are sampled, and for every target pixel the samples it mixes
+    private final int[] sampleX;
+    private final int[] sampleY;
+    private final int[] firstSampleX;
+    private final int[] firstSampleY;
+    private final int[] left;
+    private final int[] right;
+    private final float[] rightWeight;
+    private final int[] top;
+    private final int[] bottom;
+    private final float[] bottomWeight;
+
+    private final float[] samples;
+
+    /**
+     * Constructs a {@link GrayscaleRasterizer}.
+     *
+     * @param width  the width of the frames to produce
+     * @param height the height of the frames to produce
+     */
+    public GrayscaleRasterizer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        left = new int[width];
+        right = new int[width];
+        rightWeight = new float[width];
+        sampleX = sampleAxis(Constant.FRAME_WIDTH, width, left, right, rightWeight);
+        top = new int[height];
+        bottom = new int[height];
+        bottomWeight = new float[height];
+        sampleY = sampleAxis(Constant.FRAME_HEIGHT, height, top, bottom, bottomWeight);
+        firstSampleX = firstSamples(sampleX, Constant.FRAME_WIDTH);
+        firstSampleY = firstSamples(sampleY, Constant.FRAME_HEIGHT);
+        samples = new float[sampleX.length * sampleY.length];
+    }
+
+    /**
+     * Draws the current frame of the game.
+     *
+     * @param game  the game to draw
+     * @param frame the grayscale pixels to write, row by row, {@code width * height} of them
+     */
+    public void rasterize(FlappyBird game, byte[] frame) {
+        game.draw(this);
+        int columns = sampleX.length;
+        for (int y = 0; y < height; y++) {
+            int topRow = top[y] * columns;
+            int bottomRow = bottom[y] * columns;
+            float wy = bottomWeight[y];
+            for (int x = 0; x < width; x++) {
+                float wx = rightWeight[x];
+                float upper = samples[topRow + left[x]] * (1 - wx) + samples[topRow + right[x]] * wx;
+                float lower = samples[bottomRow + left[x]] * (1 - wx) + samples[bottomRow + right[x]] * wx;
+                int value = Math.round(upper * (1 - wy) + lower * wy);
+                frame[y * width + x] = (byte) Math.min(255, Math.max(0, value));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear(int rgb) {
+        float gray = gray(rgb);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = gray;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawSprite(Sprite sprite, int x, int y) {
+        Mask mask = masks.get(sprite);
+        int fromColumn = firstSampleX[clamp(x, Constant.FRAME_WIDTH)];
+        int toColumn = firstSampleX[clamp(x + mask.width, Constant.FRAME_WIDTH)];
+        int fromRow = firstSampleY[clamp(y, Constant.FRAME_HEIGHT)];
+        int toRow = firstSampleY[clamp(y + mask.height, Constant.FRAME_HEIGHT)];
+        int columns = sampleX.length;
+        for (int row = fromRow; row < toRow; row++) {
+            int maskRow = (sampleY[row] - y) * mask.width - x;
+            int sampleRow = row * columns;
+            if (mask.opaque) {
+                for (int column = fromColumn; column < toColumn; column++) {
+                    samples[sampleRow + column] = mask.intensity[maskRow + sampleX[column]];
+                }
+            } else {
+                for (int column = fromColumn; column < toColumn; column++) {
+                    int i = maskRow + sampleX[column];
+                    int s = sampleRow + column;
+                    samples[s] = mask.intensity[i] + samples[s] * mask.transparency[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the source pixels a bilinear resize reads along one axis, the same way as OpenCV:
+     * the center of target pixel {@code i} is at {@code (i + 0.5) * scale - 0.5}.
+     *
+     * @return the sorted source coordinates which are read
+     */
+    private static int[] sampleAxis(int sourceSize, int targetSize, int[] low, int[] high, float[] highWeight) {
+        float scale = (float) sourceSize / targetSize;
+        int[] lowCoordinate = new int[targetSize];
+        int[] highCoordinate = new int[targetSize];
+        TreeSet<Integer> coordinates = new TreeSet<>();
+        for (int i = 0; i < targetSize; i++) {
+            float center = (i + 0.5f) * scale - 0.5f;
+            int floor = (int) Math.floor(center);
+            highWeight[i] = center - floor;
+            lowCoordinate[i] = Math.min(Math.max(floor, 0), sourceSize - 1);
+            highCoordinate[i] = Math.min(Math.max(floor + 1, 0), sourceSize - 1);
+            coordinates.add(lowCoordinate[i]);
+            coordinates.add(highCoordinate[i]);
+        }
+        int[] sampled = new int[coordinates.size()];
+        int index = 0;
+        for (int coordinate : coordinates) {
+            sampled[index++] = coordinate;
+        }
+        for (int i = 0; i < targetSize; i++) {
+            low[i] = indexOf(sampled, lowCoordinate[i]);
+            high[i] = indexOf(sampled, highCoordinate[i]);
+        }
+        return sampled;
+    }
+
+    /**
+     * For every coordinate from 0 to {@code size}, the index of the first sample at or after it.
+     */
+    private static int[] firstSamples(int[] sampled, int size) {
+        int[] first = new int[size + 1];
+        int index = 0;
+        for (int coordinate = 0; coordinate <= size; coordinate++) {
+            while (index < sampled.length && sampled[index] < coordinate) {
+                index++;
+            }
+            first[coordinate] = index;
+        }
+        return first;
+    }
+
+    private static int indexOf(int[] sampled, int coordinate) {
+        for (int i = 0; i < sampled.length; i++) {
+            if (sampled[i] == coordinate) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not sampled: " + coordinate);
+    }
+
+    private static int clamp(int coordinate, int size) {
+        return Math.min(Math.max(coordinate, 0), size);
+    }
+
+    private static float gray(int rgb) {
+        return (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3f;
+    }
+
+    /**
+     * A sprite as grayscale intensity premultiplied by alpha, and the transparency left for what is
+     * under it.
+     */
+    private static final class Mask {
+        final int width;
+        final int height;
+        final float[] intensity;
+        final float[] transparency;
+        final boolean opaque;
+
+        Mask(BufferedImage image) {
+            width = image.getWidth();
+            height = image.getHeight();
+            int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+            intensity = new float[argb.length];
+            transparency = new float[argb.length];
+            boolean allOpaque = true;
+            for (int i = 0; i < argb.length; i++) {
+                float alpha = (argb[i] >>> 24) / 255f;
+                intensity[i] = gray(argb[i]) * alpha;
+                transparency[i] = 1 - alpha;
+                allOpaque &= alpha == 1f;
+            }
+            opaque = allOpaque;
+        }
+    }
+}
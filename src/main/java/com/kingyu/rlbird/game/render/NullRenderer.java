@@ -0,0 +1,35 @@
+package com.kingyu.rlbird.game.render;
+
+import com.kingyu.rlbird.game.FlappyBird;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A {@link Renderer} that draws nothing, for running the game logic alone.
+ *
+ * @author Kingyu
+ */
+public class NullRenderer implements Renderer {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(FlappyBird game) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BufferedImage getFrame() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,46 @@
+package com.kingyu.rlbird.game.render;
+
+import com.kingyu.rlbird.game.FlappyBird;
+import com.kingyu.rlbird.util.Constant;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A {@link Renderer} that draws each frame into an image, it works with {@code java.awt.headless=true}.
+ *
+ * @author Kingyu
+ */
+public class OffscreenRenderer implements Renderer {
+
+    private final BufferedImage frame;
+    private final GraphicsCanvas canvas;
+
+    public OffscreenRenderer() {
+        frame = new BufferedImage(Constant.FRAME_WIDTH, Constant.FRAME_HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+        canvas = new GraphicsCanvas(frame.getGraphics(), Constant.FRAME_WIDTH, Constant.FRAME_HEIGHT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(FlappyBird game) {
+        game.draw(canvas);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BufferedImage getFrame() {
+        return frame;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        canvas.dispose();
+    }
+}
@@ -0,0 +1,37 @@
+package com.kingyu.rlbird.game.render;
+
+import com.kingyu.rlbird.game.FlappyBird;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Produces the frames of a {@link FlappyBird}.
+ *
+ * <p>The game itself never touches AWT, which renderer is used decides whether a frame is drawn
+ * at all: {@link NullRenderer} draws nothing, {@link OffscreenRenderer} draws into an image and
+ * {@link WindowRenderer} also shows that image in a window.
+ *
+ * @author Kingyu
+ */
+public interface Renderer extends AutoCloseable {
+
+    /**
+     * Draws the current frame of the game.
+     *
+     * @param game the game to draw
+     */
+    void render(FlappyBird game);
+
+    /**
+     * Returns the last frame drawn.
+     *
+     * @return the last frame drawn, or null if this renderer does not keep one
+     */
+    BufferedImage getFrame();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,41 @@
+package com.kingyu.rlbird.game.render;
+
+import com.kingyu.rlbird.util.Constant;
+
+/**
+ * The images the game is drawn with.
+ *
+ * <p>The sizes are kept here so that the game logic can lay out its elements without loading the
+ * images, {@link SpriteSheet} checks them against the image files when it loads them.
+ *
+ * @author Kingyu
+ */
+public enum Sprite {
+    BIRD(Constant.BIRDS_IMG_PATH, 39, 33),
+    GROUND(Constant.BG_IMG_PATH, 336, 112),
+    PIPE_BODY(Constant.PIPE_IMG_PATH[0], 40, 20),
+    PIPE_TOP_HEAD(Constant.PIPE_IMG_PATH[1], 44, 25),
+    PIPE_BOTTOM_HEAD(Constant.PIPE_IMG_PATH[2], 44, 25);
+
+    private final String path;
+    private final int width;
+    private final int height;
+
+    Sprite(String path, int width, int height) {
+        this.path = path;
+        this.width = width;
+        this.height = height;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,38 @@
+package com.kingyu.rlbird.game.render;
+
+import com.kingyu.rlbird.util.GameUtil;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Loads the {@link Sprite} images, only the renderers which really draw need them.
+ *
+ * @author Kingyu
+ */
+final class SpriteSheet {
+
+    private static final Map<Sprite, BufferedImage> images = new EnumMap<>(Sprite.class);
+
+    static {
+        for (Sprite sprite : Sprite.values()) {
+            BufferedImage image = GameUtil.loadBufferedImage(sprite.getPath());
+            if (image == null) {
+                throw new IllegalStateException("Failed to load sprite " + sprite.getPath());
+            }
+            if (image.getWidth() != sprite.getWidth() || image.getHeight() != sprite.getHeight()) {
+                throw new IllegalStateException("Unexpected size of sprite " + sprite.getPath() + ": "
+                        + image.getWidth() + "x" + image.getHeight());
+            }
+            images.put(sprite, image);
+        }
+    }
+
+    private SpriteSheet() {
+    }
+
+    static BufferedImage getImage(Sprite sprite) {
+        return images.get(sprite);
+    }
+}
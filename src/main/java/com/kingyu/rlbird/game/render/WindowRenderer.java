@@ -0,0 +1,140 @@
+package com.kingyu.rlbird.game.render;
+
+import com.kingyu.rlbird.game.FlappyBird;
+
+import java.awt.Frame;
+import java.awt.Graphics;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.kingyu.rlbird.util.Constant.*;
+
+/**
+ * A {@link Renderer} that shows the game in a window, at display rate, without slowing the game
+ * down.
+ *
+ * <p>The frames are drawn into three images. The game draws into one of them and hands it over
+ * once complete, the window shows another one, and the third one is the latest complete frame,
+ * waiting to be shown. The handover swaps the images with a single atomic exchange, so the game
+ * never waits for the window. A viewer thread repaints the window {@code 1000 / FPS} times per
+ * second, when a new frame is waiting; the frames drawn meanwhile are not drawn at all, as long
+ * as the window has not taken the last one.
+ *
+ * @author Kingyu
+ */
+public class WindowRenderer implements Renderer {
+
+    // the index of the image waiting to be shown, with this bit set until the window takes it
+    private static final int FRESH = 4;
+
+    private final BufferedImage[] frames;
+    private final GraphicsCanvas[] canvases;
+    private final AtomicInteger ready;
+    private final GameFrame window;
+    private final Thread viewer;
+    private int drawing;
+    private int showing;
+    private volatile boolean closed;
+
+    public WindowRenderer() {
+        frames = new BufferedImage[3];
+        canvases = new GraphicsCanvas[3];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+            canvases[i] = new GraphicsCanvas(frames[i].getGraphics(), FRAME_WIDTH, FRAME_HEIGHT);
+        }
+        drawing = 0;
+        ready = new AtomicInteger(1);
+        showing = 2;
+
+        window = new GameFrame();
+        window.setVisible(true);
+        viewer = new Thread(this::view, "viewer");
+        viewer.setDaemon(true);
+        viewer.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void render(FlappyBird game) {
+        if ((ready.get() & FRESH) != 0) {
+            // the window has not shown the last frame yet
+            return;
+        }
+        game.draw(canvases[drawing]);
+        drawing = ready.getAndSet(drawing | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Returns the latest complete frame. The game may draw into it again once the window has shown
+     * it.
+     *
+     * @return the latest complete frame
+     */
+    @Override
+    public BufferedImage getFrame() {
+        return frames[ready.get() & ~FRESH];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        closed = true;
+        viewer.interrupt();
+        window.dispose();
+        for (GraphicsCanvas canvas : canvases) {
+            canvas.dispose();
+        }
+    }
+
+    private void view() {
+        while (!closed) {
+            if ((ready.get() & FRESH) != 0) {
+                window.repaint();
+            }
+            try {
+                Thread.sleep(FPS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private class GameFrame extends Frame {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Initialize the game frame
+         */
+        GameFrame() {
+            setSize(FRAME_WIDTH, FRAME_HEIGHT);
+            setTitle(GAME_TITLE);
+            setLocation(FRAME_X, FRAME_Y);
+            setResizable(false);
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    System.exit(0);
+                }
+            });
+        }
+
+        /**
+         * Takes the latest complete frame, if there is a new one, and shows it. It only runs on the
+         * event dispatch thread, so the image shown is never handed back to the game while shown.
+         */
+        @Override
+        public void update(Graphics g) {
+            if ((ready.get() & FRESH) != 0) {
+                showing = ready.getAndSet(showing) & ~FRESH;
+            }
+            g.drawImage(frames[showing], 0, 0, null);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.kingyu.rlbird.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The in-process registry of the training metrics.
+ *
+ * <p>Every phase of the actor and learner loops has a {@link PhaseTimer}, and the environment
+ * steps, train steps and trained samples are counted. All of it is exposed as MBeans under
+ * {@code com.kingyu.rlbird}, the throughput being measured by a background thread every
+ * {@value #THROUGHPUT_SECONDS} seconds whether or not anything reads it. Once
+ * {@link #start(Path, long)} is called a snapshot is appended to a CSV file at a fixed interval,
+ * along with the last throughput measured.
+ */
+public final class Metrics {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    private static final String DOMAIN = "com.kingyu.rlbird";
+    private static final long THROUGHPUT_SECONDS = 10;
+
+    public static final PhaseTimer RENDER = timer("render");
+    public static final PhaseTimer RASTERIZE = timer("rasterize");
+    public static final PhaseTimer CHOOSE_ACTION = timer("choose-action");
+    public static final PhaseTimer REPLAY_ADD = timer("replay-add");
+    public static final PhaseTimer REPLAY_SAMPLE = timer("replay-sample");
+    public static final PhaseTimer COLLATE = timer("collate");
+    public static final PhaseTimer FORWARD_BACKWARD = timer("forward-backward");
+    public static final PhaseTimer OPTIMIZER_STEP = timer("optimizer-step");
+
+    public static final LongAdder ENV_STEPS = new LongAdder();
+    public static final LongAdder TRAIN_STEPS = new LongAdder();
+    public static final LongAdder TRAIN_SAMPLES = new LongAdder();
+
+    private static final Throughput throughput = new Throughput();
+    private static final List<PhaseTimer> timers = Arrays.asList(RENDER, RASTERIZE, CHOOSE_ACTION, REPLAY_ADD,
+            REPLAY_SAMPLE, COLLATE, FORWARD_BACKWARD, OPTIMIZER_STEP);
+    private static Thread snapshotThread;
+
+    static {
+        register("type=Throughput", throughput);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-throughput");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(throughput::update, THROUGHPUT_SECONDS, THROUGHPUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Starts appending snapshots to a CSV file, one row per interval.
+     *
+     * @param csvFile         the file to append to
+     * @param intervalSeconds the seconds between two snapshots
+     * @throws IOException if the file cannot be opened
+     */
+    public static synchronized void start(Path csvFile, long intervalSeconds) throws IOException {
+        if (snapshotThread != null) {
+            throw new IllegalStateException("The metrics snapshots are already started");
+        }
+        if (csvFile.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(csvFile.toAbsolutePath().getParent());
+        }
+        BufferedWriter writer = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8);
+        writer.write(header());
+        writer.newLine();
+        writer.flush();
+        snapshotThread = new Thread(() -> writeSnapshots(writer, intervalSeconds), "metrics");
+        snapshotThread.setDaemon(true);
+        snapshotThread.start();
+    }
+
+    /**
+     * Writes a last snapshot and stops.
+     */
+    public static synchronized void stop() {
+        if (snapshotThread == null) {
+            return;
+        }
+        snapshotThread.interrupt();
+        try {
+            snapshotThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshotThread = null;
+    }
+
+    private static PhaseTimer timer(String name) {
+        PhaseTimer timer = new PhaseTimer(name);
+        register("type=Phase,name=" + name, timer);
+        return timer;
+    }
+
+    private static void register(String properties, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(mbean, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register the MBean " + properties, e);
+        }
+    }
+
+    private static String header() {
+        StringBuilder header = new StringBuilder("time,env_steps_per_second,train_steps_per_second,replay_ratio,samples_per_env_step");
+        for (PhaseTimer timer : timers) {
+            String name = timer.getName().replace('-', '_');
+            header.append(',').append(name).append("_count")
+                    .append(',').append(name).append("_mean_us")
+                    .append(',').append(name).append("_p50_us")
+                    .append(',').append(name).append("_p99_us")
+                    .append(',').append(name).append("_max_us");
+        }
+        return header.toString();
+    }
+
+    private static void writeSnapshots(BufferedWriter writer, long intervalSeconds) {
+        try {
+            boolean running = true;
+            while (running) {
+                try {
+                    TimeUnit.SECONDS.sleep(intervalSeconds);
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+                StringBuilder row = new StringBuilder();
+                row.append(System.currentTimeMillis())
+                        .append(',').append(format(throughput.getEnvStepsPerSecond()))
+                        .append(',').append(format(throughput.getTrainStepsPerSecond()))
+                        .append(',').append(format(throughput.getReplayRatio()))
+                        .append(',').append(format(throughput.getSamplesPerEnvStep()));
+                for (PhaseTimer timer : timers) {
+                    row.append(',').append(timer.getCount())
+                            .append(',').append(format(timer.getMeanMicros()))
+                            .append(',').append(format(timer.getP50Micros()))
+                            .append(',').append(format(timer.getP99Micros()))
+                            .append(',').append(format(timer.getMaxMicros()));
+                }
+                writer.write(row.toString());
+                writer.newLine();
+                writer.flush();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to write the metrics", e);
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.error("Failed to close the metrics", e);
+            }
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * The throughput over the last {@value #THROUGHPUT_SECONDS} seconds, updated by the background
+     * thread of the metrics.
+     */
+    private static final class Throughput implements ThroughputMXBean {
+        private volatile double envStepsPerSecond;
+        private volatile double trainStepsPerSecond;
+        private volatile double replayRatio;
+        private volatile double samplesPerEnvStep;
+        private long lastNanos = System.nanoTime();
+        private long lastEnvSteps;
+        private long lastTrainSteps;
+        private long lastTrainSamples;
+
+        synchronized void update() {
+            long now = System.nanoTime();
+            long envSteps = ENV_STEPS.sum();
+            long trainSteps = TRAIN_STEPS.sum();
+            long trainSamples = TRAIN_SAMPLES.sum();
+            double seconds = Math.max(1e-9, (now - lastNanos) / 1e9);
+            envStepsPerSecond = (envSteps - lastEnvSteps) / seconds;
+            trainStepsPerSecond = (trainSteps - lastTrainSteps) / seconds;
+            replayRatio = envSteps == lastEnvSteps ? 0
+                    : (double) (trainSteps - lastTrainSteps) / (envSteps - lastEnvSteps);
+            samplesPerEnvStep = envSteps == lastEnvSteps ? 0
+                    : (double) (trainSamples - lastTrainSamples) / (envSteps - lastEnvSteps);
+            lastNanos = now;
+            lastEnvSteps = envSteps;
+            lastTrainSteps = trainSteps;
+            lastTrainSamples = trainSamples;
+        }
+
+        @Override
+        public double getEnvStepsPerSecond() {
+            return envStepsPerSecond;
+        }
+
+        @Override
+        public double getTrainStepsPerSecond() {
+            return trainStepsPerSecond;
+        }
+
+        @Override
+        public double getReplayRatio() {
+            return replayRatio;
+        }
+
+        @Override
+        public double getSamplesPerEnvStep() {
+            return samplesPerEnvStep;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.kingyu.rlbird.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the runs of a phase of the training loop and keeps a histogram of their latencies.
+ *
+ * <p>The latencies fall into power of two buckets of nanoseconds, so recording is a handful of
+ * uncontended atomic additions and the percentiles are accurate to a factor of two.
+ */
+public class PhaseTimer implements PhaseTimerMXBean {
+
+    private static final int BUCKETS = 64;
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    PhaseTimer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the phase.
+     *
+     * @return the name of the phase
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a run of the phase which started at the given time and ends now.
+     *
+     * @param startNanos the {@link System#nanoTime()} when the phase started
+     */
+    public void record(long startNanos) {
+        long nanos = Math.max(0, System.nanoTime() - startNanos);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getTotalMicros() {
+        return totalNanos.sum() / 1e3;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMeanMicros() {
+        long runs = count.sum();
+        return runs == 0 ? 0 : totalNanos.sum() / 1e3 / runs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getP50Micros() {
+        return percentile(0.5);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getP99Micros() {
+        return percentile(0.99);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1e3;
+    }
+
+    private double percentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                // bucket i holds the latencies below 2^i nanoseconds
+                return (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i)) / 1e3;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.kingyu.rlbird.metrics;
+
+/**
+ * The JMX view of a {@link PhaseTimer}. The latencies are in microseconds, and the percentiles are
+ * the upper bounds of power of two buckets.
+ */
+public interface PhaseTimerMXBean {
+
+    /**
+     * Returns the number of times the phase ran.
+     *
+     * @return the number of times the phase ran
+     */
+    long getCount();
+
+    /**
+     * Returns the total time spent in the phase.
+     *
+     * @return the total time in microseconds
+     */
+    double getTotalMicros();
+
+    /**
+     * Returns the mean latency of the phase.
+     *
+     * @return the mean latency in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * Returns the median latency of the phase.
+     *
+     * @return the median latency in microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * Returns the 99th percentile latency of the phase.
+     *
+     * @return the 99th percentile latency in microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * Returns the highest latency of the phase.
+     *
+     * @return the highest latency in microseconds
+     */
+    double getMaxMicros();
+}
@@ -0,0 +1,38 @@
+package com.kingyu.rlbird.metrics;
+
+/**
+ * The JMX view of the training throughput, measured over the last ten seconds, with or without
+ * the CSV snapshots.
+ */
+public interface ThroughputMXBean {
+
+    /**
+     * Returns the environment steps taken per second.
+     *
+     * @return the environment steps per second
+     */
+    double getEnvStepsPerSecond();
+
+    /**
+     * Returns the batches trained on per second.
+     *
+     * @return the train steps per second
+     */
+    double getTrainStepsPerSecond();
+
+    /**
+     * Returns the number of batches trained on per environment step, the replay ratio held by the
+     * {@link com.kingyu.rlbird.rl.ReplayScheduler}.
+     *
+     * @return the replay ratio
+     */
+    double getReplayRatio();
+
+    /**
+     * Returns the number of samples trained on per environment step, the replay ratio times the
+     * batch size.
+     *
+     * @return the samples per environment step
+     */
+    double getSamplesPerEnvStep();
+}
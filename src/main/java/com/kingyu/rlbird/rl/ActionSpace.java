@@ -1,9 +1,9 @@
 package com.kingyu.rlbird.rl;
 
 import ai.djl.ndarray.NDList;
-import ai.djl.util.RandomUtils;
 
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 /** Contains the available actions that can be taken in an {@link ai.djl.modality.rl.env.RlEnv}. */
 public class ActionSpace extends ArrayList<NDList> {
@@ -11,11 +11,12 @@ public class ActionSpace extends ArrayList<NDList> {
     private static final long serialVersionUID = 8683452581122892189L;
 
     /**
-     * Returns a random action.
+     * Returns a random action drawn from the given generator.
      *
+     * @param random the generator to draw from
      * @return a random action
      */
-    public NDList randomAction() {
-        return get(RandomUtils.nextInt(size()));
+    public NDList randomAction(SplittableRandom random) {
+        return get(random.nextInt(size()));
     }
 }
@@ -0,0 +1,117 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.metrics.Metrics;
+import com.kingyu.rlbird.rl.env.RlEnv;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples and collates the next batches on a background thread while the learner trains.
+ *
+ * <p>A fixed number of {@link TransitionBatch}es cycle between the prefetching thread, which fills
+ * the free ones from the replay buffer, and the learner, which takes the ready ones and releases
+ * them once trained on. The thread starts with the first {@link #take()}, so nothing is sampled
+ * before the learner starts.
+ */
+public class BatchPrefetcher implements AutoCloseable {
+
+    private static final long FAILURE_CHECK_MILLIS = 100;
+
+    private final StepSource replayBuffer;
+    private final BlockingQueue<TransitionBatch> free;
+    private final BlockingQueue<TransitionBatch> ready;
+    private Thread thread;
+    private volatile Throwable failure;
+
+    /**
+     * Constructs a {@link BatchPrefetcher}.
+     *
+     * @param replayBuffer the buffer, or other source, to sample from
+     * @param prefetch     the number of batches to have ready ahead of the learner
+     * @param batchSize    the number of steps per batch, as sampled by the buffer
+     * @param depth        the number of frames stacked in an observation
+     * @param height       the height of a frame
+     * @param width        the width of a frame
+     * @param actionCount  the number of actions
+     */
+    public BatchPrefetcher(StepSource replayBuffer, int prefetch, int batchSize, int depth, int height,
+                           int width, int actionCount) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("BatchPrefetcher needs at least one batch");
+        }
+        this.replayBuffer = replayBuffer;
+        // one more batch than prefetched, for the learner to train on
+        free = new ArrayBlockingQueue<>(prefetch + 1);
+        ready = new ArrayBlockingQueue<>(prefetch + 1);
+        for (int i = 0; i <= prefetch; i++) {
+            free.add(new TransitionBatch(batchSize, depth, height, width, actionCount));
+        }
+    }
+
+    /**
+     * Returns the next batch, waiting for it if it is not ready yet. It must be given back with
+     * {@link #release(TransitionBatch)} once trained on.
+     *
+     * @return the next batch
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public TransitionBatch take() throws InterruptedException {
+        synchronized (this) {
+            if (thread == null) {
+                thread = new Thread(this::prefetch, "batch-prefetcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        TransitionBatch batch = ready.poll(FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        while (batch == null) {
+            if (failure != null) {
+                throw new IllegalStateException("Failed to prefetch a batch", failure);
+            }
+            batch = ready.poll(FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return batch;
+    }
+
+    /**
+     * Gives a batch back to be refilled.
+     *
+     * @param batch the batch taken
+     */
+    public void release(TransitionBatch batch) {
+        if (!free.offer(batch)) {
+            throw new IllegalStateException("More batches released than taken");
+        }
+    }
+
+    /**
+     * Stops prefetching.
+     */
+    @Override
+    public synchronized void close() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void prefetch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                TransitionBatch batch = free.take();
+                long start = System.nanoTime();
+                RlEnv.Step[] steps = replayBuffer.getBatch();
+                Metrics.REPLAY_SAMPLE.record(start);
+                start = System.nanoTime();
+                batch.fill(steps);
+                Metrics.COLLATE.record(start);
+                ready.put(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package com.kingyu.rlbird.rl;
+
+import ai.djl.ndarray.types.Shape;
+import com.kingyu.rlbird.rl.env.FrameStep;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.Transition;
+import com.kingyu.rlbird.util.Seeds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * A {@link ReplayBuffer} that stores the steps column by column instead of keeping the steps.
+ *
+ * <p>Every frame is stored once, as uint8 pixels off the heap, while each step only keeps the
+ * sequence numbers of the frames its observations are stacked from, next to primitive arrays of
+ * actions, rewards and terminals. The observations are stacked again from the frames when a batch
+ * is sampled. Like {@link LruReplayBuffer}, it selects randomly across the whole buffer and
+ * replaces the oldest steps once it is full.
+ *
+ * <p>It can store n-step transitions: a step is then only stored once the {@code n - 1} steps after
+ * it in its environment are added, with the discounted sum of their {@code n} rewards, and the
+ * observation {@code n} steps later as the observation after the action. The steps of each
+ * environment wait in a window of the last {@code n} steps, whose discounted sum is kept up to date
+ * as the steps come and go. A terminal step stores all the steps waiting at once, with the sum of
+ * the rewards until the end of the episode.
+ *
+ * <p>The steps added must be {@link FrameStep}s. The methods are synchronized so that the
+ * environments of a {@link com.kingyu.rlbird.rl.env.VecEnv} can share one buffer.
+ *
+ * <p>The buffer is saved as a little-endian header, the step columns, then the frames as uint8
+ * pixels laid out exactly as in memory, from a page boundary on. A restore only reads the header
+ * and the columns, the frames are mapped from the file and only read from the disk as they are
+ * sampled. The mapping is private, so the frames written afterwards never change the file.
+ */
+public class ColumnarReplayBuffer implements PersistentReplayBuffer {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarReplayBuffer.class);
+
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+    private static final int FILE_MAGIC = 0x52504c42; // "RPLB"
+    private static final int FILE_VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int PAGE_BYTES = 4096;
+
+    private final int batchSize;
+    private final int capacity;
+    private final int depth;
+    private final int frameSize;
+    private final int actionCount;
+    private final Shape shape;
+    private final int nStep;
+    private final double[] discounts;
+
+    // the frames, as a ring of sequence numbers spread over buffers of at most 1GB, allocated when first written
+    private final int frameCapacity;
+    private final int framesPerChunk;
+    private final ByteBuffer[] frameChunks;
+    private long nextFrame;
+
+    // the steps, (depth + nStep) frames per step: the frames before the action, oldest first, then the nStep new frames
+    private final int stepLength;
+    private final long[] stepFrames;
+    private final int[] actions;
+    private final float[] rewards;
+    private final boolean[] terminals;
+    private long nextStep;
+
+    // the steps of the episode each environment is in that wait for their next steps
+    private final Map<Integer, Window> windows;
+    private final SplittableRandom random;
+
+    /**
+     * Constructs a {@link ColumnarReplayBuffer}.
+     *
+     * @param batchSize   the number of steps to train on per batch
+     * @param bufferSize  the number of steps to hold in the buffer
+     * @param depth       the number of frames stacked in an observation
+     * @param height      the height of a frame
+     * @param width       the width of a frame
+     * @param actionCount the number of actions
+     */
+    public ColumnarReplayBuffer(int batchSize, int bufferSize, int depth, int height, int width, int actionCount) {
+        this(batchSize, bufferSize, depth, height, width, actionCount, 1, 1f);
+    }
+
+    /**
+     * Constructs a {@link ColumnarReplayBuffer} of n-step transitions.
+     *
+     * @param batchSize      the number of steps to train on per batch
+     * @param bufferSize     the number of steps to hold in the buffer
+     * @param depth          the number of frames stacked in an observation
+     * @param height         the height of a frame
+     * @param width          the width of a frame
+     * @param actionCount    the number of actions
+     * @param nStep          the number of rewards summed in a step, 1 to store the steps as added
+     * @param rewardDiscount the discount of each reward after the first one
+     */
+    public ColumnarReplayBuffer(int batchSize, int bufferSize, int depth, int height, int width, int actionCount,
+                                int nStep, float rewardDiscount) {
+        if (nStep < 1 || rewardDiscount <= 0 || rewardDiscount > 1) {
+            throw new IllegalArgumentException("Invalid n-step " + nStep + " or reward discount " + rewardDiscount);
+        }
+        this.batchSize = batchSize;
+        this.capacity = bufferSize;
+        this.depth = depth;
+        this.frameSize = height * width;
+        this.actionCount = actionCount;
+        this.shape = new Shape(1, depth, height, width);
+        this.nStep = nStep;
+        this.discounts = new double[nStep];
+        for (int i = 0; i < nStep; i++) {
+            discounts[i] = Math.pow(rewardDiscount, i);
+        }
+
+        // a new episode takes one more frame than its steps, leave room for short episodes
+        frameCapacity = bufferSize + bufferSize / 4 + depth;
+        framesPerChunk = Math.min(frameCapacity, MAX_CHUNK_BYTES / frameSize);
+        frameChunks = new ByteBuffer[(frameCapacity + framesPerChunk - 1) / framesPerChunk];
+
+        stepLength = depth + nStep;
+        stepFrames = new long[bufferSize * stepLength];
+        actions = new int[bufferSize];
+        rewards = new float[bufferSize];
+        terminals = new boolean[bufferSize];
+        windows = new HashMap<>();
+        random = Seeds.split();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RlEnv.Step[] getBatch() {
+        return getBatch(batchSize);
+    }
+
+    /**
+     * Returns a number of steps selected randomly from this buffer. The steps are copies of what
+     * the buffer holds, so they stay valid after the buffer replaces them.
+     *
+     * @param count the number of steps to return
+     * @return the steps
+     */
+    public synchronized RlEnv.Step[] getBatch(int count) {
+        RlEnv.Step[] batch = new RlEnv.Step[count];
+        for (int i = 0; i < count; i++) {
+            batch[i] = getStep(sampleIndex());
+        }
+        return batch;
+    }
+
+    /**
+     * Nothing to close, the buffer keeps no steps.
+     */
+    @Override
+    public void closeStep() {
+    }
+
+    /**
+     * Adds the transition of a step.
+     *
+     * @param step the {@link FrameStep} to add
+     */
+    @Override
+    public void addStep(RlEnv.Step step) {
+        if (!(step instanceof FrameStep)) {
+            throw new IllegalArgumentException("ColumnarReplayBuffer only stores FrameSteps");
+        }
+        addTransition((FrameStep) step);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addTransition(Transition transition) {
+        Window window = windows.get(transition.getEnvId());
+        if (window == null || transition.isEpisodeStart()) {
+            // the steps still waiting, if an episode was left without a terminal step, are dropped
+            window = new Window(writeFrame(transition.getPreFrame()));
+            windows.put(transition.getEnvId(), window);
+        }
+        window.add(writeFrame(transition.getPostFrame()), transition.getActionIndex(), transition.getRewardValue());
+
+        if (transition.isTerminal()) {
+            while (window.count > 0) {
+                store(window, true);
+            }
+            windows.remove(transition.getEnvId());
+        } else if (window.count == nStep) {
+            store(window, false);
+        }
+    }
+
+    /**
+     * Stores the oldest step waiting in a window, and removes it from the window.
+     */
+    private void store(Window window, boolean terminal) {
+        int index = (int) (nextStep % capacity);
+        int base = index * stepLength;
+        int frames = depth + window.count;
+        System.arraycopy(window.frames, 0, stepFrames, base, frames);
+        // a step cut by the end of the episode repeats its last frame, it is never bootstrapped from
+        for (int i = frames; i < stepLength; i++) {
+            stepFrames[base + i] = window.frames[frames - 1];
+        }
+        actions[index] = window.actions[window.head];
+        rewards[index] = (float) window.sum;
+        terminals[index] = terminal;
+        nextStep++;
+        window.removeOldest();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Only the columns are copied holding the lock, the frames are written from the buffer while
+     * the steps keep coming, oldest first so that the writes stay ahead of the frames added. The
+     * steps stacked from frames overwritten meanwhile are saved as incomplete, so they are never
+     * sampled once restored.
+     *
+     * @throws IOException if the file cannot be written, or every step was overwritten while saving
+     */
+    @Override
+    public void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        ByteBuffer columns = ByteBuffer.allocate((int) framesOffset()).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer[] chunks;
+        long savedNextFrame;
+        long savedSize;
+        synchronized (this) {
+            savedNextFrame = nextFrame;
+            savedSize = size();
+            columns.putInt(FILE_MAGIC).putInt(FILE_VERSION)
+                    .putInt(capacity).putInt(depth).putInt(frameSize).putInt(actionCount).putInt(frameCapacity)
+                    .putInt(nStep)
+                    .putLong(nextFrame).putLong(nextStep);
+            columns.position(HEADER_BYTES);
+            for (long frame : stepFrames) {
+                columns.putLong(frame);
+            }
+            for (int action : actions) {
+                columns.put((byte) action);
+            }
+            for (float reward : rewards) {
+                columns.putFloat(reward);
+            }
+            for (boolean terminal : terminals) {
+                columns.put((byte) (terminal ? 1 : 0));
+            }
+            chunks = frameChunks.clone();
+        }
+
+        Path temporary = Files.createTempFile(directory, "." + file.getFileName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                // oldest first, as the oldest frames are the next ones overwritten
+                int oldest = (int) (savedNextFrame % frameCapacity);
+                writeFrames(channel, chunks, oldest, frameCapacity);
+                writeFrames(channel, chunks, 0, oldest);
+                long length = framesOffset() + (long) frameCapacity * frameSize;
+                if (channel.size() < length) {
+                    writeFully(channel, ByteBuffer.allocate(1), length - 1);
+                }
+
+                long oldestFrame;
+                synchronized (this) {
+                    oldestFrame = nextFrame - frameCapacity;
+                }
+                // the first frame of a step is its oldest, a step is whole if its first frame was not overwritten
+                int whole = 0;
+                for (int i = 0; i < capacity; i++) {
+                    int position = HEADER_BYTES + i * stepLength * Long.BYTES;
+                    if (columns.getLong(position) < oldestFrame) {
+                        columns.putLong(position, Long.MIN_VALUE);
+                    } else if (i < savedSize) {
+                        whole++;
+                    }
+                }
+                if (savedSize > 0 && whole == 0) {
+                    throw new IOException("Every frame of the replay buffer was replaced while saving it to " + file);
+                }
+                columns.clear();
+                writeFully(channel, columns, 0);
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory(directory);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The episodes the environments are in are not saved, each starts its next episode anew.
+     */
+    @Override
+    public synchronized void restore(Path file) throws IOException {
+        // a private mapping needs a writable channel, though nothing is ever written to the file
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer columns = ByteBuffer.allocate((int) framesOffset()).order(ByteOrder.LITTLE_ENDIAN);
+            while (columns.hasRemaining()) {
+                if (channel.read(columns, columns.position()) < 0) {
+                    throw new EOFException("Truncated replay buffer file " + file);
+                }
+            }
+            columns.flip();
+            checkHeader(columns, channel.size(), file);
+            long savedNextFrame = columns.getLong();
+            long savedNextStep = columns.getLong();
+            ByteBuffer[] savedChunks = new ByteBuffer[frameChunks.length];
+            for (int i = 0; i < savedChunks.length; i++) {
+                savedChunks[i] = channel.map(FileChannel.MapMode.PRIVATE, chunkOffset(i), chunkBytes(i));
+            }
+
+            // nothing is changed before here, so a file that fails to restore leaves the buffer as it was
+            columns.position(HEADER_BYTES);
+            for (int i = 0; i < stepFrames.length; i++) {
+                stepFrames[i] = columns.getLong();
+            }
+            for (int i = 0; i < capacity; i++) {
+                actions[i] = columns.get();
+            }
+            for (int i = 0; i < capacity; i++) {
+                rewards[i] = columns.getFloat();
+            }
+            for (int i = 0; i < capacity; i++) {
+                terminals[i] = columns.get() != 0;
+            }
+
+            System.arraycopy(savedChunks, 0, frameChunks, 0, frameChunks.length);
+            nextFrame = savedNextFrame;
+            nextStep = savedNextStep;
+            windows.clear();
+        }
+    }
+
+    /**
+     * Checks that a file was saved by a buffer like this one and is whole, without restoring it.
+     *
+     * @param file the file to check
+     * @throws IOException if the file cannot be read, is not a replay buffer file or is truncated
+     * @throws IllegalArgumentException if the file was saved with another capacity, other shapes or
+     *                                  another n-step
+     */
+    void check(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new EOFException("Truncated replay buffer file " + file);
+                }
+            }
+            header.flip();
+            checkHeader(header, channel.size(), file);
+        }
+    }
+
+    /**
+     * Returns the number of steps in the buffer.
+     *
+     * @return the number of steps in the buffer
+     */
+    @Override
+    public synchronized int size() {
+        return (int) Math.min(nextStep, capacity);
+    }
+
+    /**
+     * Returns the number of steps the buffer holds once it is full.
+     *
+     * @return the capacity of the buffer
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of steps added since the buffer was created, which is also the sequence
+     * number the next step gets. The step with sequence number {@code s} is stored at index
+     * {@code s % capacity} until {@code capacity} more steps are added.
+     *
+     * @return the number of steps added
+     */
+    protected long getStepCount() {
+        return nextStep;
+    }
+
+    /**
+     * Returns the generator the steps are sampled with. It must only be used holding the lock of
+     * the buffer.
+     *
+     * @return the generator of the buffer
+     */
+    protected SplittableRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Rebuilds a step from its frames.
+     *
+     * @param index the index of the step in the buffer
+     * @return the step
+     */
+    protected ReplayStep getStep(int index) {
+        return getStep(index, 1);
+    }
+
+    /**
+     * Rebuilds a step from its frames, with the weight it should be trained with.
+     *
+     * @param index  the index of the step in the buffer
+     * @param weight the importance-sampling weight of the step
+     * @return the step
+     */
+    protected ReplayStep getStep(int index, float weight) {
+        int base = index * stepLength;
+        byte[] preFrames = new byte[depth * frameSize];
+        byte[] postFrames = new byte[depth * frameSize];
+        for (int i = 0; i < depth; i++) {
+            readFrame(stepFrames[base + i], preFrames, i * frameSize);
+            readFrame(stepFrames[base + i + nStep], postFrames, i * frameSize);
+        }
+        long id = nextStep - 1 - Math.floorMod(nextStep - 1 - index, (long) capacity);
+        return new ReplayStep(shape, preFrames, postFrames, actions[index], actionCount,
+                rewards[index], terminals[index], id, weight);
+    }
+
+    /**
+     * Returns whether all the frames of a step are still stored. With many short episodes the
+     * oldest steps may have lost their first frames before the steps are replaced.
+     *
+     * @param index the index of the step in the buffer
+     * @return true if the step can be rebuilt
+     */
+    protected boolean isComplete(int index) {
+        return stepFrames[index * stepLength] >= nextFrame - frameCapacity;
+    }
+
+    private int sampleIndex() {
+        int size = size();
+        if (size == 0) {
+            throw new IllegalStateException("The replay buffer is empty");
+        }
+        int index = random.nextInt(size);
+        while (!isComplete(index)) {
+            index = random.nextInt(size);
+        }
+        return index;
+    }
+
+    private long writeFrame(byte[] frame) {
+        long sequence = nextFrame++;
+        ByteBuffer chunk = locate(sequence);
+        chunk.put(frame, 0, frameSize);
+        return sequence;
+    }
+
+    private void readFrame(long sequence, byte[] destination, int offset) {
+        ByteBuffer chunk = locate(sequence);
+        chunk.get(destination, offset, frameSize);
+    }
+
+    private ByteBuffer locate(long sequence) {
+        int frame = (int) (sequence % frameCapacity);
+        int index = frame / framesPerChunk;
+        if (frameChunks[index] == null) {
+            frameChunks[index] = ByteBuffer.allocateDirect(chunkBytes(index));
+        }
+        ByteBuffer chunk = frameChunks[index].duplicate();
+        chunk.position((frame % framesPerChunk) * frameSize);
+        return chunk;
+    }
+
+    /**
+     * Writes the frames of a range of the ring, the chunks never written being left as holes.
+     */
+    private void writeFrames(FileChannel channel, ByteBuffer[] chunks, int from, int to) throws IOException {
+        int frame = from;
+        while (frame < to) {
+            int index = frame / framesPerChunk;
+            int start = frame - index * framesPerChunk;
+            int end = Math.min(to - index * framesPerChunk, chunkBytes(index) / frameSize);
+            if (chunks[index] != null) {
+                ByteBuffer chunk = chunks[index].duplicate();
+                chunk.limit(end * frameSize);
+                chunk.position(start * frameSize);
+                writeFully(channel, chunk, chunkOffset(index) + (long) start * frameSize);
+            }
+            frame = index * framesPerChunk + end;
+        }
+    }
+
+    // the rename is only durable once the directory is, which some platforms cannot open to force
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Failed to force the directory " + directory, e);
+        }
+    }
+
+    private void checkHeader(ByteBuffer header, long fileSize, Path file) throws IOException {
+        if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION) {
+            throw new IOException("Not a replay buffer file: " + file);
+        }
+        int[] expected = {capacity, depth, frameSize, actionCount, frameCapacity, nStep};
+        for (int value : expected) {
+            if (header.getInt() != value) {
+                throw new IllegalArgumentException("The replay buffer in " + file
+                        + " was saved with another capacity, other shapes or another n-step");
+            }
+        }
+        if (fileSize < framesOffset() + (long) frameCapacity * frameSize) {
+            throw new EOFException("Truncated replay buffer file " + file);
+        }
+    }
+
+    private int chunkBytes(int index) {
+        return Math.min(framesPerChunk, frameCapacity - index * framesPerChunk) * frameSize;
+    }
+
+    private long chunkOffset(int index) {
+        return framesOffset() + (long) index * framesPerChunk * frameSize;
+    }
+
+    private long framesOffset() {
+        long columns = HEADER_BYTES + (long) stepFrames.length * Long.BYTES
+                + capacity + (long) capacity * Float.BYTES + capacity;
+        return (columns + PAGE_BYTES - 1) / PAGE_BYTES * PAGE_BYTES;
+    }
+
+    /**
+     * The steps of an episode waiting for their next steps, in the order they were added.
+     */
+    private final class Window {
+        // the frames of the oldest step before its action, then the frame after each step
+        private final long[] frames;
+        private final int[] actions;
+        private final float[] rewards;
+        private int head;
+        private int count;
+        // the rewards of the steps discounted from the oldest one, summed again every nStep steps
+        private double sum;
+        private int removed;
+
+        Window(long firstFrame) {
+            frames = new long[stepLength];
+            for (int i = 0; i < depth; i++) {
+                frames[i] = firstFrame;
+            }
+            actions = new int[nStep];
+            rewards = new float[nStep];
+        }
+
+        void add(long frame, int action, float reward) {
+            int slot = (head + count) % nStep;
+            frames[depth + count] = frame;
+            actions[slot] = action;
+            rewards[slot] = reward;
+            sum += discounts[count] * reward;
+            count++;
+        }
+
+        void removeOldest() {
+            System.arraycopy(frames, 1, frames, 0, depth + count - 1);
+            float reward = rewards[head];
+            head = (head + 1) % nStep;
+            count--;
+            if (++removed == nStep || discounts.length == 1) {
+                // removing a reward divides by the discount, which grows the rounding errors
+                removed = 0;
+                sum = 0;
+                for (int i = 0; i < count; i++) {
+                    sum += discounts[i] * rewards[(head + i) % nStep];
+                }
+            } else {
+                sum = (sum - reward) / discounts[1];
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package com.kingyu.rlbird.rl;
 
-import ai.djl.util.RandomUtils;
 import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.util.Seeds;
 
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 /**
  * A simple {@link ReplayBuffer} that randomly selects across the whole buffer, but always removes
  * the oldest items in the buffer once it is full.
+ *
+ * <p>The methods are synchronized so that the environments of a {@link com.kingyu.rlbird.rl.env.VecEnv}
+ * can share one buffer.
  */
 public class LruReplayBuffer implements ReplayBuffer {
 
@@ -16,6 +20,7 @@ public class LruReplayBuffer implements ReplayBuffer {
     private final ArrayList<RlEnv.Step> stepToClose;
     private int firstStepIndex;
     private int stepsActualSize;
+    private final SplittableRandom random;
 
     /**
      * Constructs a {@link ai.djl.modality.rl.LruReplayBuffer}.
@@ -29,6 +34,7 @@ public class LruReplayBuffer implements ReplayBuffer {
         stepToClose = new ArrayList<>(bufferSize);
         firstStepIndex = 0;
         stepsActualSize = 0;
+        random = Seeds.split();
     }
 
     /**
@@ -36,10 +42,10 @@ public class LruReplayBuffer implements ReplayBuffer {
      */
     @Override
     @SuppressWarnings("PMD.AvoidArrayLoops")
-    public RlEnv.Step[] getBatch() {
+    public synchronized RlEnv.Step[] getBatch() {
         RlEnv.Step[] batch = new RlEnv.Step[batchSize];
         for (int i = 0; i < batchSize; i++) {
-            int baseIndex = RandomUtils.nextInt(stepsActualSize);
+            int baseIndex = random.nextInt(stepsActualSize);
             int index = Math.floorMod(firstStepIndex + baseIndex, steps.length);
             batch[i] = steps[index];
         }
@@ -49,7 +55,7 @@ public class LruReplayBuffer implements ReplayBuffer {
     /**
      * {@inheritDoc}
      */
-    public void closeStep() {
+    public synchronized void closeStep() {
         for (RlEnv.Step step : stepToClose) {
             step.close();
         }
@@ -60,7 +66,7 @@ public class LruReplayBuffer implements ReplayBuffer {
      * {@inheritDoc}
      */
     @Override
-    public void addStep(RlEnv.Step step) {
+    public synchronized void addStep(RlEnv.Step step) {
         if (stepsActualSize == steps.length) {
             int stepToReplace = Math.floorMod(firstStepIndex - 1, steps.length);
             stepToClose.add(steps[stepToReplace]);
@@ -0,0 +1,38 @@
+package com.kingyu.rlbird.rl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@link ReplayBuffer} whose steps can be saved to a file and restored from it, so that a
+ * restarted training does not have to fill the buffer again. It stores the frames of the steps, so
+ * it also takes bare {@link com.kingyu.rlbird.rl.env.Transition}s.
+ */
+public interface PersistentReplayBuffer extends ReplayBuffer, TransitionSink {
+
+    /**
+     * Saves the steps of the buffer. The file is replaced atomically, so a crash while saving
+     * leaves the previous file as it was.
+     *
+     * @param file the file to save to
+     * @throws IOException if the file cannot be written
+     */
+    void save(Path file) throws IOException;
+
+    /**
+     * Replaces the steps of the buffer with the steps saved in a file. The file must have been
+     * saved by a buffer of the same capacity and shapes.
+     *
+     * @param file the file to restore from
+     * @throws java.nio.file.NoSuchFileException if nothing was saved to the file
+     * @throws IOException                        if the file cannot be read
+     */
+    void restore(Path file) throws IOException;
+
+    /**
+     * Returns the number of steps in the buffer.
+     *
+     * @return the number of steps in the buffer
+     */
+    int size();
+}
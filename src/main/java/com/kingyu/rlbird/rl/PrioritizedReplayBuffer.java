@@ -0,0 +1,172 @@
+package com.kingyu.rlbird.rl;
+
+import ai.djl.training.tracker.Tracker;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.Transition;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@link ColumnarReplayBuffer} that samples steps by priority instead of uniformly.
+ *
+ * <p>A step is sampled with probability {@code p^alpha / sum(p^alpha)}, where its priority
+ * {@code p} is its last absolute TD error. New steps get the highest priority seen so far so that
+ * each is trained on at least once. The priorities are kept in a {@link SumTree}, so sampling and
+ * updating a priority take O(log n).
+ *
+ * <p>Sampling by priority biases the updates, which the importance-sampling weights of the
+ * returned {@link ReplayStep}s correct: {@code (N * P(i))^-beta}, scaled so that the largest
+ * possible weight is 1. Beta is annealed to 1 by a {@link Tracker} over the batches sampled. More
+ * information can be found in the <a href="https://arxiv.org/abs/1511.05952">paper</a>.
+ */
+public class PrioritizedReplayBuffer extends ColumnarReplayBuffer implements PriorityUpdater {
+
+    private static final double MIN_PRIORITY = 1e-6;
+    private static final int MAX_RESAMPLES = 64;
+
+    private final int batchSize;
+    private final float alpha;
+    private final Tracker beta;
+    private final SumTree priorities;
+    private double maxPriority;
+    private int batches;
+
+    /**
+     * Constructs a {@link PrioritizedReplayBuffer}.
+     *
+     * @param batchSize   the number of steps to train on per batch
+     * @param bufferSize  the number of steps to hold in the buffer
+     * @param depth       the number of frames stacked in an observation
+     * @param height      the height of a frame
+     * @param width       the width of a frame
+     * @param actionCount the number of actions
+     * @param alpha       how much the priorities count, 0 for uniform sampling
+     * @param beta        the importance-sampling exponent for each batch sampled
+     */
+    public PrioritizedReplayBuffer(int batchSize, int bufferSize, int depth, int height, int width,
+                                   int actionCount, float alpha, Tracker beta) {
+        this(batchSize, bufferSize, depth, height, width, actionCount, 1, 1f, alpha, beta);
+    }
+
+    /**
+     * Constructs a {@link PrioritizedReplayBuffer} of n-step transitions.
+     *
+     * @param batchSize      the number of steps to train on per batch
+     * @param bufferSize     the number of steps to hold in the buffer
+     * @param depth          the number of frames stacked in an observation
+     * @param height         the height of a frame
+     * @param width          the width of a frame
+     * @param actionCount    the number of actions
+     * @param nStep          the number of rewards summed in a step, 1 to store the steps as added
+     * @param rewardDiscount the discount of each reward after the first one
+     * @param alpha          how much the priorities count, 0 for uniform sampling
+     * @param beta           the importance-sampling exponent for each batch sampled
+     */
+    public PrioritizedReplayBuffer(int batchSize, int bufferSize, int depth, int height, int width,
+                                   int actionCount, int nStep, float rewardDiscount, float alpha, Tracker beta) {
+        super(batchSize, bufferSize, depth, height, width, actionCount, nStep, rewardDiscount);
+        this.batchSize = batchSize;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.priorities = new SumTree(bufferSize);
+        this.maxPriority = 1;
+    }
+
+    /**
+     * Samples a batch by priority. The range of the priorities is split into one segment per step
+     * of the batch, and one step is sampled from each segment.
+     *
+     * @return the batch of {@link ReplayStep}s with their weights
+     */
+    @Override
+    public synchronized RlEnv.Step[] getBatch() {
+        int size = size();
+        if (size == 0) {
+            throw new IllegalStateException("The replay buffer is empty");
+        }
+        float exponent = beta.getNewValue(batches++);
+        RlEnv.Step[] batch = new RlEnv.Step[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            int index = sampleIndex(i, size);
+            // (N * P(i))^-beta divided by the largest weight, which the smallest priority has
+            double weight = Math.pow(priorities.get(index) / priorities.min(), -exponent);
+            batch[i] = getStep(index, (float) weight);
+        }
+        return batch;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addTransition(Transition transition) {
+        long stored = getStepCount();
+        super.addTransition(transition);
+        // an n-step buffer stores no step, or several at the end of an episode
+        for (long sequence = stored; sequence < getStepCount(); sequence++) {
+            priorities.update((int) (sequence % getCapacity()), maxPriority);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The priorities are not saved, every restored step gets the highest priority so that each
+     * is trained on again before the priorities count.
+     */
+    @Override
+    public synchronized void restore(Path file) throws IOException {
+        super.restore(file);
+        maxPriority = 1;
+        int size = size();
+        for (int i = 0; i < getCapacity(); i++) {
+            priorities.update(i, i < size ? maxPriority : 0);
+        }
+    }
+
+    /**
+     * Updates the priorities of the steps which are still in the buffer. The steps must be the
+     * {@link ReplayStep}s of a batch sampled from this buffer.
+     *
+     * @param batchSteps the steps trained on
+     * @param tdErrors   the absolute TD error of each step
+     */
+    @Override
+    public synchronized void updatePriorities(RlEnv.Step[] batchSteps, float[] tdErrors) {
+        if (batchSteps.length != tdErrors.length) {
+            throw new IllegalArgumentException("Expected " + batchSteps.length + " TD errors, got " + tdErrors.length);
+        }
+        long stepCount = getStepCount();
+        for (int i = 0; i < batchSteps.length; i++) {
+            if (!(batchSteps[i] instanceof ReplayStep)) {
+                throw new IllegalArgumentException("Priorities can only be updated for ReplaySteps");
+            }
+            long id = ((ReplayStep) batchSteps[i]).getId();
+            if (id < 0 || stepCount - id > getCapacity()) {
+                // replaced by a newer step while training
+                continue;
+            }
+            double priority = Math.pow(Math.abs(tdErrors[i]) + MIN_PRIORITY, alpha);
+            priorities.update((int) (id % getCapacity()), priority);
+            maxPriority = Math.max(maxPriority, priority);
+        }
+    }
+
+    private int sampleIndex(int segment, int size) {
+        double segmentSize = priorities.total() / batchSize;
+        double prefixSum = (segment + getRandom().nextDouble()) * segmentSize;
+        for (int i = 0; i < MAX_RESAMPLES; i++) {
+            int index = priorities.find(prefixSum);
+            if (index < size && isComplete(index)) {
+                return index;
+            }
+            if (index < size) {
+                // its first frames were overwritten, leave it out until the step is replaced
+                priorities.update(index, 0);
+            }
+            prefixSum = getRandom().nextDouble() * priorities.total();
+        }
+        throw new IllegalStateException("No complete step found in the replay buffer");
+    }
+}
@@ -0,0 +1,18 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.rl.env.RlEnv;
+
+/**
+ * Receives the TD errors of the steps a batch was trained on, so that a replay buffer can
+ * sample them according to how much they still have to teach.
+ */
+public interface PriorityUpdater {
+
+    /**
+     * Updates the priorities of the steps of a batch.
+     *
+     * @param batchSteps the steps trained on
+     * @param tdErrors   the absolute TD error of each step
+     */
+    void updatePriorities(RlEnv.Step[] batchSteps, float[] tdErrors);
+}
@@ -8,24 +8,5 @@ import com.kingyu.rlbird.rl.env.RlEnv;
  * <p>Using a replay buffer ensures that a variety of states are trained on for every training batch
  * making the training more stable.
  */
-public interface ReplayBuffer {
-
-    /**
-     * Returns a batch of steps from this buffer.
-     *
-     * @return a batch of steps from this buffer
-     */
-    RlEnv.Step[] getBatch();
-
-    /**
-     * close the step not pointed to.
-     */
-    void closeStep();
-
-    /**
-     * Adds a new step to the buffer.
-     *
-     * @param step the step to add
-     */
-    void addStep(RlEnv.Step step);
+public interface ReplayBuffer extends StepSource, StepSink {
 }
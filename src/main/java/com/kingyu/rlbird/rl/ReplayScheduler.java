@@ -0,0 +1,163 @@
+package com.kingyu.rlbird.rl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the training steps in a fixed ratio to the game steps, the replay ratio, by making the
+ * trainer or the environments wait for each other.
+ *
+ * <p>Once the observation steps are played, the trainer may take one training step per
+ * {@code 1 / replayRatio} game steps: it waits in {@link #awaitTrainStep()} when it is ahead, and
+ * the environments wait in {@link #awaitGameSteps()} when the trainer is more than {@code slack}
+ * training steps behind. The two never wait at the same time, so the ratio of a run is the same
+ * however fast the trainer and the environments are, instead of whatever the machine gives.
+ *
+ * <p>The counters are shared with the rest of the run, which reads them directly. Both sides stop
+ * waiting once {@link #shutdown()} is called, so that either can end the run.
+ */
+public class ReplayScheduler {
+
+    private final AtomicInteger gameSteps;
+    private final AtomicInteger trainSteps;
+    private final float replayRatio;
+    private final int observe;
+    private final int slack;
+    private final AtomicInteger waiting;
+    private volatile boolean shutdown;
+
+    /**
+     * Constructs a {@link ReplayScheduler}.
+     *
+     * @param gameSteps   the counter of the game steps played
+     * @param trainSteps  the counter of the training steps taken
+     * @param replayRatio the number of training steps per game step, 0 to let the trainer train as
+     *                    fast as it can
+     * @param observe     the number of game steps to play before the first training step
+     * @param slack       the number of training steps the trainer may fall behind the ratio before
+     *                    the environments wait, at least 1
+     */
+    public ReplayScheduler(AtomicInteger gameSteps, AtomicInteger trainSteps, float replayRatio, int observe,
+                           int slack) {
+        if (replayRatio < 0) {
+            throw new IllegalArgumentException("Invalid replay ratio " + replayRatio);
+        }
+        if (slack < 1) {
+            throw new IllegalArgumentException("Invalid replay slack " + slack);
+        }
+        this.gameSteps = gameSteps;
+        this.trainSteps = trainSteps;
+        this.replayRatio = replayRatio;
+        this.observe = observe;
+        this.slack = slack;
+        this.waiting = new AtomicInteger();
+    }
+
+    /**
+     * Waits until the environments may play, that is until the trainer is at most {@code slack}
+     * training steps behind the ratio.
+     *
+     * @return true to play, false once shut down
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitGameSteps() throws InterruptedException {
+        if (replayRatio == 0 || owed() <= slack) {
+            return !shutdown;
+        }
+        synchronized (this) {
+            waiting.incrementAndGet();
+            try {
+                while (!shutdown && owed() > slack) {
+                    wait();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        return !shutdown;
+    }
+
+    /**
+     * Waits until the trainer may take its next training step, that is until the observation steps
+     * are played and the step is owed by the ratio.
+     *
+     * @return true to train, false once shut down
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTrainStep() throws InterruptedException {
+        if (mayTrain()) {
+            return !shutdown;
+        }
+        synchronized (this) {
+            waiting.incrementAndGet();
+            try {
+                while (!shutdown && !mayTrain()) {
+                    wait();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        return !shutdown;
+    }
+
+    /**
+     * Counts game steps played, waking the trainer if it waits for them.
+     *
+     * @param count the number of game steps played
+     * @return the number of game steps played so far
+     */
+    public int addGameSteps(int count) {
+        int total = gameSteps.addAndGet(count);
+        signal();
+        return total;
+    }
+
+    /**
+     * Counts a training step taken, waking the environments if they wait for it.
+     *
+     * @return the number of training steps taken so far
+     */
+    public int addTrainStep() {
+        int total = trainSteps.incrementAndGet();
+        signal();
+        return total;
+    }
+
+    /**
+     * Stops the waits, now and from now on, when either side is done.
+     */
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns whether {@link #shutdown()} was called.
+     *
+     * @return true if shut down
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private boolean mayTrain() {
+        return gameSteps.get() > observe && (replayRatio == 0 || owed() >= 1);
+    }
+
+    // the training steps owed by the game steps played, less the ones taken
+    private double owed() {
+        return (double) replayRatio * Math.max(0, gameSteps.get() - observe) - trainSteps.get();
+    }
+
+    private void signal() {
+        // a waiter counts itself before checking the counters, and a counter is updated before
+        // this check, so either the waiter sees the update or it is seen waiting here
+        if (waiting.get() > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.kingyu.rlbird.rl;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import com.kingyu.rlbird.rl.env.RlEnv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link RlEnv.Step} rebuilt from the frames stored in a replay buffer.
+ *
+ * <p>It keeps its stacked frames on the heap and only creates NDArrays when the observations are
+ * asked for with a manager, in that manager, so it holds no native memory of its own.
+ */
+public class ReplayStep implements RlEnv.Step {
+
+    private final Shape shape;
+    private final byte[] preFrames;
+    private final byte[] postFrames;
+    private final int actionIndex;
+    private final int actionCount;
+    private final float reward;
+    private final boolean terminal;
+    private final long id;
+    private final float weight;
+
+    private NDManager manager;
+    private NDList preObservation;
+    private NDList postObservation;
+
+    /**
+     * Constructs a {@link ReplayStep}.
+     *
+     * @param shape       the shape of an observation
+     * @param preFrames   the stacked frames before the action, oldest first
+     * @param postFrames  the stacked frames after the action, oldest first
+     * @param actionIndex the index of the action taken
+     * @param actionCount the number of actions
+     * @param reward      the reward given for the action
+     * @param terminal    whether the environment finished
+     */
+    public ReplayStep(Shape shape, byte[] preFrames, byte[] postFrames, int actionIndex, int actionCount,
+                      float reward, boolean terminal) {
+        this(shape, preFrames, postFrames, actionIndex, actionCount, reward, terminal, -1, 1);
+    }
+
+    /**
+     * Constructs a {@link ReplayStep} sampled with an importance-sampling weight.
+     *
+     * @param shape       the shape of an observation
+     * @param preFrames   the stacked frames before the action, oldest first
+     * @param postFrames  the stacked frames after the action, oldest first
+     * @param actionIndex the index of the action taken
+     * @param actionCount the number of actions
+     * @param reward      the reward given for the action
+     * @param terminal    whether the environment finished
+     * @param id          the sequence number of the step in the replay buffer
+     * @param weight      the weight to train on the step with
+     */
+    public ReplayStep(Shape shape, byte[] preFrames, byte[] postFrames, int actionIndex, int actionCount,
+                      float reward, boolean terminal, long id, float weight) {
+        this.shape = shape;
+        this.preFrames = preFrames;
+        this.postFrames = postFrames;
+        this.actionIndex = actionIndex;
+        this.actionCount = actionCount;
+        this.reward = reward;
+        this.terminal = terminal;
+        this.id = id;
+        this.weight = weight;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NDList getPreObservation(NDManager manager) {
+        this.manager = manager;
+        preObservation = new NDList(toObservation(manager, preFrames));
+        return preObservation;
+    }
+
+    /**
+     * Returns the observation last created by {@link #getPreObservation(NDManager)}.
+     *
+     * @return the observation before the action
+     */
+    @Override
+    public NDList getPreObservation() {
+        if (preObservation == null) {
+            throw new IllegalStateException("The observation is created by getPreObservation(NDManager)");
+        }
+        return preObservation;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NDList getPostObservation(NDManager manager) {
+        this.manager = manager;
+        postObservation = new NDList(toObservation(manager, postFrames));
+        return postObservation;
+    }
+
+    /**
+     * Returns the observation last created by {@link #getPostObservation(NDManager)}.
+     *
+     * @return the observation after the action
+     */
+    @Override
+    public NDList getPostObservation() {
+        if (postObservation == null) {
+            throw new IllegalStateException("The observation is created by getPostObservation(NDManager)");
+        }
+        return postObservation;
+    }
+
+    /**
+     * Returns the manager the observations were last created in.
+     *
+     * @return the manager the observations were last created in
+     */
+    @Override
+    public NDManager getManager() {
+        return manager;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NDList getAction() {
+        int[] oneHot = new int[actionCount];
+        oneHot[actionIndex] = 1;
+        return new NDList(requireManager().create(oneHot));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NDArray getReward() {
+        return requireManager().create(reward);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTerminal() {
+        return terminal;
+    }
+
+    /**
+     * Returns the index of the action taken.
+     *
+     * @return the index of the action taken
+     */
+    public int getActionIndex() {
+        return actionIndex;
+    }
+
+    /**
+     * Returns the reward given for the action.
+     *
+     * @return the reward given for the action
+     */
+    public float getRewardValue() {
+        return reward;
+    }
+
+    /**
+     * Returns the sequence number of the step in the replay buffer, -1 if unknown.
+     *
+     * @return the sequence number of the step
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the importance-sampling weight of the step, 1 unless it was sampled by priority.
+     *
+     * @return the weight to train on the step with
+     */
+    public float getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the stacked frames before the action, oldest first.
+     *
+     * @return the stacked frames before the action
+     */
+    public byte[] getPreFrames() {
+        return preFrames;
+    }
+
+    /**
+     * Returns the stacked frames after the action, oldest first.
+     *
+     * @return the stacked frames after the action
+     */
+    public byte[] getPostFrames() {
+        return postFrames;
+    }
+
+    /**
+     * Nothing to close, the NDArrays belong to the managers they were created in.
+     */
+    @Override
+    public void close() {
+    }
+
+    private NDManager requireManager() {
+        if (manager == null) {
+            throw new IllegalStateException("No manager yet, get an observation with a manager first");
+        }
+        return manager;
+    }
+
+    private NDArray toObservation(NDManager manager, byte[] frames) {
+        return manager.create(ByteBuffer.wrap(frames), shape, DataType.UINT8)
+                .toType(DataType.FLOAT32, false)
+                .divi(255);
+    }
+}
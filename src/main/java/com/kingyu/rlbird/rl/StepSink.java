@@ -0,0 +1,16 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.rl.env.RlEnv;
+
+/**
+ * Takes the {@link RlEnv.Step}s an environment plays, without giving anything back.
+ */
+public interface StepSink {
+
+    /**
+     * Adds a new step.
+     *
+     * @param step the step to add
+     */
+    void addStep(RlEnv.Step step);
+}
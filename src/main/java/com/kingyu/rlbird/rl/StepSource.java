@@ -0,0 +1,21 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.rl.env.RlEnv;
+
+/**
+ * Gives batches of {@link RlEnv.Step}s to train on, without taking any.
+ */
+public interface StepSource {
+
+    /**
+     * Returns a batch of steps.
+     *
+     * @return a batch of steps
+     */
+    RlEnv.Step[] getBatch();
+
+    /**
+     * close the step not pointed to.
+     */
+    void closeStep();
+}
@@ -0,0 +1,206 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.rl.env.FrameStep;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.Transition;
+import com.kingyu.rlbird.util.Seeds;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * A {@link ReplayBuffer} for many actor threads and one or more learner threads.
+ *
+ * <p>The buffer is split into stripes, each a {@link ColumnarReplayBuffer} with its own lock, and
+ * every environment adds its steps to the stripe of its id. Actors stepping different environments
+ * thus only contend when they share a stripe, and a learner only holds one stripe at a time while
+ * it samples. A batch is drawn across the stripes in proportion to the number of steps each holds.
+ *
+ * <p>The steps returned are rebuilt from the stored frames, so a learner never sees a step that
+ * was closed or replaced by an actor after it was sampled.
+ */
+public class StripedReplayBuffer implements PersistentReplayBuffer {
+
+    private final int batchSize;
+    private final ColumnarReplayBuffer[] stripes;
+    private final SplittableRandom random;
+
+    /**
+     * Constructs a {@link StripedReplayBuffer}.
+     *
+     * @param batchSize   the number of steps to train on per batch
+     * @param bufferSize  the number of steps to hold in the buffer, spread evenly over the stripes
+     * @param stripeCount the number of stripes, usually the number of environments
+     * @param depth       the number of frames stacked in an observation
+     * @param height      the height of a frame
+     * @param width       the width of a frame
+     * @param actionCount the number of actions
+     */
+    public StripedReplayBuffer(int batchSize, int bufferSize, int stripeCount, int depth, int height, int width,
+                               int actionCount) {
+        this(batchSize, bufferSize, stripeCount, depth, height, width, actionCount, 1, 1f);
+    }
+
+    /**
+     * Constructs a {@link StripedReplayBuffer} of n-step transitions.
+     *
+     * @param batchSize      the number of steps to train on per batch
+     * @param bufferSize     the number of steps to hold in the buffer, spread evenly over the stripes
+     * @param stripeCount    the number of stripes, usually the number of environments
+     * @param depth          the number of frames stacked in an observation
+     * @param height         the height of a frame
+     * @param width          the width of a frame
+     * @param actionCount    the number of actions
+     * @param nStep          the number of rewards summed in a step, 1 to store the steps as added
+     * @param rewardDiscount the discount of each reward after the first one
+     */
+    public StripedReplayBuffer(int batchSize, int bufferSize, int stripeCount, int depth, int height, int width,
+                               int actionCount, int nStep, float rewardDiscount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("StripedReplayBuffer needs at least one stripe");
+        }
+        this.batchSize = batchSize;
+        stripes = new ColumnarReplayBuffer[stripeCount];
+        int stripeSize = (bufferSize + stripeCount - 1) / stripeCount;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ColumnarReplayBuffer(batchSize, stripeSize, depth, height, width, actionCount,
+                    nStep, rewardDiscount);
+        }
+        random = Seeds.split();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RlEnv.Step[] getBatch() {
+        // take the sizes once, the stripes keep growing while the batch is drawn
+        int[] sizes = new int[stripes.length];
+        int total = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            sizes[i] = stripes[i].size();
+            total += sizes[i];
+        }
+        if (total == 0) {
+            throw new IllegalStateException("The replay buffer is empty");
+        }
+
+        int[] counts = new int[stripes.length];
+        synchronized (random) {
+            for (int i = 0; i < batchSize; i++) {
+                int sample = random.nextInt(total);
+                int stripe = 0;
+                while (sample >= sizes[stripe]) {
+                    sample -= sizes[stripe];
+                    stripe++;
+                }
+                counts[stripe]++;
+            }
+        }
+
+        RlEnv.Step[] batch = new RlEnv.Step[batchSize];
+        int filled = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (counts[i] > 0) {
+                RlEnv.Step[] steps = stripes[i].getBatch(counts[i]);
+                System.arraycopy(steps, 0, batch, filled, steps.length);
+                filled += steps.length;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Nothing to close, the stripes keep no steps.
+     */
+    @Override
+    public void closeStep() {
+    }
+
+    /**
+     * Adds a step to the stripe of the environment it was taken in.
+     *
+     * @param step the {@link FrameStep} to add
+     */
+    @Override
+    public void addStep(RlEnv.Step step) {
+        if (!(step instanceof FrameStep)) {
+            throw new IllegalArgumentException("StripedReplayBuffer only stores FrameSteps");
+        }
+        addTransition((FrameStep) step);
+    }
+
+    /**
+     * Adds a transition to the stripe of the environment it was taken in.
+     *
+     * @param transition the transition to add
+     */
+    @Override
+    public void addTransition(Transition transition) {
+        stripes[Math.floorMod(transition.getEnvId(), stripes.length)].addTransition(transition);
+    }
+
+    /**
+     * Saves each stripe next to the given file, with the index of the stripe appended to its name.
+     *
+     * @param file the file to save to
+     * @throws IOException if a file cannot be written
+     */
+    @Override
+    public void save(Path file) throws IOException {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].save(stripeFile(file, i));
+        }
+    }
+
+    /**
+     * Restores each stripe from the files saved by {@link #save(Path)}, all of them or none: every
+     * file is checked before any stripe is restored.
+     *
+     * @param file the file to restore from
+     * @throws NoSuchFileException if none of the files exist
+     * @throws IOException if some of the files are missing, or a file cannot be read or is not whole
+     */
+    @Override
+    public void restore(Path file) throws IOException {
+        int missing = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (!Files.exists(stripeFile(file, i))) {
+                missing++;
+            }
+        }
+        if (missing == stripes.length) {
+            throw new NoSuchFileException(stripeFile(file, 0).toString());
+        }
+        if (missing > 0) {
+            throw new IOException(missing + " of the " + stripes.length + " stripe files of " + file + " are missing");
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].check(stripeFile(file, i));
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].restore(stripeFile(file, i));
+        }
+    }
+
+    /**
+     * Returns the number of steps in the buffer.
+     *
+     * @return the number of steps in the buffer
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (ColumnarReplayBuffer stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private static Path stripeFile(Path file, int stripe) {
+        return file.resolveSibling(file.getFileName() + "." + stripe);
+    }
+}
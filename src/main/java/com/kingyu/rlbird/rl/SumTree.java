@@ -0,0 +1,99 @@
+package com.kingyu.rlbird.rl;
+
+import java.util.Arrays;
+
+/**
+ * A binary tree over primitive arrays whose leaves are priorities and whose inner nodes are the
+ * sums and minimums of their children.
+ *
+ * <p>Updating a priority and finding the leaf at a prefix sum both take O(log n).
+ */
+public class SumTree {
+
+    private final int capacity;
+    private final int leaves;
+    private final double[] sums;
+    private final double[] mins;
+
+    /**
+     * Constructs a {@link SumTree} with all priorities 0.
+     *
+     * @param capacity the number of priorities
+     */
+    public SumTree(int capacity) {
+        this.capacity = capacity;
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        leaves = size;
+        sums = new double[2 * size];
+        mins = new double[2 * size];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Sets a priority.
+     *
+     * @param index    the index of the priority
+     * @param priority the new priority, not negative
+     */
+    public void update(int index, double priority) {
+        int node = index + leaves;
+        sums[node] = priority;
+        mins[node] = priority > 0 ? priority : Double.POSITIVE_INFINITY;
+        for (node >>= 1; node > 0; node >>= 1) {
+            sums[node] = sums[2 * node] + sums[2 * node + 1];
+            mins[node] = Math.min(mins[2 * node], mins[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Returns a priority.
+     *
+     * @param index the index of the priority
+     * @return the priority
+     */
+    public double get(int index) {
+        return sums[index + leaves];
+    }
+
+    /**
+     * Returns the sum of all priorities.
+     *
+     * @return the sum of all priorities
+     */
+    public double total() {
+        return sums[1];
+    }
+
+    /**
+     * Returns the smallest priority above 0.
+     *
+     * @return the smallest positive priority, infinite if there is none
+     */
+    public double min() {
+        return mins[1];
+    }
+
+    /**
+     * Finds the index whose cumulative priority range contains a prefix sum, so that an index is
+     * found with a probability proportional to its priority for a uniform prefix sum.
+     *
+     * @param prefixSum a value from 0 to {@link #total()}
+     * @return the index found
+     */
+    public int find(double prefixSum) {
+        int node = 1;
+        while (node < leaves) {
+            int left = 2 * node;
+            if (prefixSum < sums[left] || sums[left + 1] == 0) {
+                node = left;
+            } else {
+                prefixSum -= sums[left];
+                node = left + 1;
+            }
+        }
+        return Math.min(node - leaves, capacity - 1);
+    }
+}
@@ -0,0 +1,167 @@
+package com.kingyu.rlbird.rl;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import com.kingyu.rlbird.rl.env.RlEnv;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A batch of steps collated into contiguous buffers, ready to be trained on.
+ *
+ * <p>The stacked frames of all the steps are laid out one after another in two direct buffers, and
+ * the actions, rewards, terminals and weights in primitive arrays, so each input of the batch is
+ * created with a single call to the engine. The buffers are allocated once and refilled for every
+ * batch, see {@link BatchPrefetcher}.
+ */
+public class TransitionBatch {
+
+    private final int batchSize;
+    private final int observationBytes;
+    private final int actionCount;
+    private final Shape shape;
+
+    private final ByteBuffer preFrames;
+    private final ByteBuffer postFrames;
+    private final float[] actions;
+    private final float[] rewards;
+    private final boolean[] terminals;
+    private final float[] weights;
+    private RlEnv.Step[] steps;
+
+    /**
+     * Constructs an empty {@link TransitionBatch}.
+     *
+     * @param batchSize   the number of steps in a batch
+     * @param depth       the number of frames stacked in an observation
+     * @param height      the height of a frame
+     * @param width       the width of a frame
+     * @param actionCount the number of actions
+     */
+    public TransitionBatch(int batchSize, int depth, int height, int width, int actionCount) {
+        this.batchSize = batchSize;
+        this.observationBytes = depth * height * width;
+        this.actionCount = actionCount;
+        this.shape = new Shape(batchSize, depth, height, width);
+        preFrames = ByteBuffer.allocateDirect(batchSize * observationBytes);
+        postFrames = ByteBuffer.allocateDirect(batchSize * observationBytes);
+        actions = new float[batchSize * actionCount];
+        rewards = new float[batchSize];
+        terminals = new boolean[batchSize];
+        weights = new float[batchSize];
+    }
+
+    /**
+     * Copies a batch of steps into the buffers, replacing the previous batch.
+     *
+     * @param batchSteps the {@link ReplayStep}s sampled from a replay buffer
+     */
+    public void fill(RlEnv.Step[] batchSteps) {
+        if (batchSteps.length != batchSize) {
+            throw new IllegalArgumentException("Expected " + batchSize + " steps, got " + batchSteps.length);
+        }
+        preFrames.clear();
+        postFrames.clear();
+        Arrays.fill(actions, 0);
+        for (int i = 0; i < batchSize; i++) {
+            if (!(batchSteps[i] instanceof ReplayStep)) {
+                throw new IllegalArgumentException("TransitionBatch only collates ReplaySteps");
+            }
+            ReplayStep step = (ReplayStep) batchSteps[i];
+            preFrames.put(step.getPreFrames(), 0, observationBytes);
+            postFrames.put(step.getPostFrames(), 0, observationBytes);
+            actions[i * actionCount + step.getActionIndex()] = 1;
+            rewards[i] = step.getRewardValue();
+            terminals[i] = step.isTerminal();
+            weights[i] = step.getWeight();
+        }
+        preFrames.flip();
+        postFrames.flip();
+        steps = batchSteps;
+    }
+
+    /**
+     * Returns the number of steps in the batch.
+     *
+     * @return the number of steps in the batch
+     */
+    public int size() {
+        return batchSize;
+    }
+
+    /**
+     * Creates the observations before the actions, of shape (batch, depth, height, width).
+     *
+     * @param manager the manager to create the observations in
+     * @return the observations before the actions
+     */
+    public NDArray getPreObservations(NDManager manager) {
+        return toObservations(manager, preFrames);
+    }
+
+    /**
+     * Creates the observations after the actions, of shape (batch, depth, height, width).
+     *
+     * @param manager the manager to create the observations in
+     * @return the observations after the actions
+     */
+    public NDArray getPostObservations(NDManager manager) {
+        return toObservations(manager, postFrames);
+    }
+
+    /**
+     * Creates the actions taken as one-hot rows, of shape (batch, actions).
+     *
+     * @param manager the manager to create the actions in
+     * @return the actions taken
+     */
+    public NDArray getActions(NDManager manager) {
+        return manager.create(actions, new Shape(batchSize, actionCount));
+    }
+
+    /**
+     * Creates the rewards given, of shape (batch).
+     *
+     * @param manager the manager to create the rewards in
+     * @return the rewards given
+     */
+    public NDArray getRewards(NDManager manager) {
+        return manager.create(rewards);
+    }
+
+    /**
+     * Returns whether each step ended its episode.
+     *
+     * @return whether each step ended its episode
+     */
+    public boolean[] getTerminals() {
+        return terminals;
+    }
+
+    /**
+     * Returns the importance-sampling weight of each step.
+     *
+     * @return the weight of each step
+     */
+    public float[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Returns the steps the batch was filled from, to give their priorities back.
+     *
+     * @return the steps of the batch
+     */
+    public RlEnv.Step[] getSteps() {
+        return steps;
+    }
+
+    private NDArray toObservations(NDManager manager, ByteBuffer frames) {
+        return manager.create(frames.duplicate(), shape, DataType.UINT8)
+                .toType(DataType.FLOAT32, false)
+                .divi(255);
+    }
+}
@@ -0,0 +1,210 @@
+package com.kingyu.rlbird.rl;
+
+import ai.djl.ndarray.types.Shape;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.util.Seeds;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A {@link StepSource} that streams the transitions recorded by {@link TransitionRecorder} from
+ * disk, to train without running any environment.
+ *
+ * <p>The files are split into chunks of records, which are visited in a random order, each mapped
+ * into memory in turn and its records returned in a random order, so only one chunk is ever read
+ * from the disk at a time. Once every chunk was visited, the next epoch starts in a new order.
+ * Nothing can be added to it.
+ */
+public class TransitionDataset implements StepSource, AutoCloseable {
+
+    private final int batchSize;
+    private final int depth;
+    private final int frameSize;
+    private final int actionCount;
+    private final int recordBytes;
+    private final Shape shape;
+    private final SplittableRandom random;
+    private final List<FileChannel> channels;
+    private final List<long[]> chunks;
+    private long size;
+
+    private int[] chunkOrder;
+    private int nextChunk;
+    private MappedByteBuffer chunk;
+    private int[] recordOrder;
+    private int nextRecord;
+
+    /**
+     * Constructs a {@link TransitionDataset}.
+     *
+     * @param files        the files recorded by {@link TransitionRecorder}
+     * @param batchSize    the number of steps per batch
+     * @param chunkRecords the number of records in a chunk
+     * @param depth        the number of frames stacked in an observation
+     * @param height       the height of a frame
+     * @param width        the width of a frame
+     * @param actionCount  the number of actions
+     * @throws IOException if a file cannot be read, or holds transitions of other shapes
+     */
+    public TransitionDataset(List<Path> files, int batchSize, int chunkRecords, int depth, int height, int width,
+                             int actionCount) throws IOException {
+        this.batchSize = batchSize;
+        this.depth = depth;
+        this.frameSize = height * width;
+        this.actionCount = actionCount;
+        this.recordBytes = TransitionRecorder.recordBytes(depth, frameSize);
+        if ((long) chunkRecords * recordBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A chunk of " + chunkRecords + " records is too large to map");
+        }
+        this.shape = new Shape(1, depth, height, width);
+        this.random = Seeds.split();
+        this.channels = new ArrayList<>(files.size());
+        this.chunks = new ArrayList<>();
+
+        ByteBuffer expected = ByteBuffer.allocate(TransitionRecorder.HEADER_BYTES).order(TransitionRecorder.BYTE_ORDER);
+        expected.putInt(TransitionRecorder.MAGIC).putInt(TransitionRecorder.VERSION)
+                .putInt(depth).putInt(height).putInt(width).putInt(actionCount);
+        expected.flip();
+        try {
+            for (Path file : files) {
+                if (!expected.equals(readHeader(file))) {
+                    throw new IOException("The transitions in " + file + " have other shapes");
+                }
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                channels.add(channel);
+                // a record cut short by a crash while recording is left out
+                long records = (channel.size() - TransitionRecorder.HEADER_BYTES) / recordBytes;
+                for (long first = 0; first < records; first += chunkRecords) {
+                    chunks.add(new long[]{channels.size() - 1, first, Math.min(chunkRecords, records - first)});
+                }
+                size += records;
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        if (size == 0) {
+            close();
+            throw new IllegalArgumentException("No transition recorded in " + files);
+        }
+        chunkOrder = new int[0];
+        recordOrder = new int[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized RlEnv.Step[] getBatch() {
+        RlEnv.Step[] batch = new RlEnv.Step[batchSize];
+        try {
+            for (int i = 0; i < batchSize; i++) {
+                if (nextRecord == recordOrder.length) {
+                    nextChunk();
+                }
+                batch[i] = readStep(recordOrder[nextRecord++]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the transitions", e);
+        }
+        return batch;
+    }
+
+    /**
+     * Nothing to close, the steps are read from the files.
+     */
+    @Override
+    public void closeStep() {
+    }
+
+    /**
+     * Returns the number of transitions in the files.
+     *
+     * @return the number of transitions
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the header of a file recorded by {@link TransitionRecorder}.
+     *
+     * @param file the file to read
+     * @return the header, ready to be read
+     * @throws IOException if the file cannot be read
+     */
+    static ByteBuffer readHeader(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(TransitionRecorder.HEADER_BYTES).order(TransitionRecorder.BYTE_ORDER);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new EOFException("Truncated transition file " + file);
+                }
+            }
+        }
+        header.flip();
+        return header;
+    }
+
+    private void nextChunk() throws IOException {
+        if (nextChunk == chunkOrder.length) {
+            chunkOrder = shuffled(chunks.size());
+            nextChunk = 0;
+        }
+        long[] location = chunks.get(chunkOrder[nextChunk++]);
+        FileChannel channel = channels.get((int) location[0]);
+        long offset = TransitionRecorder.HEADER_BYTES + location[1] * recordBytes;
+        chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset, location[2] * recordBytes);
+        chunk.order(TransitionRecorder.BYTE_ORDER);
+        recordOrder = shuffled((int) location[2]);
+        nextRecord = 0;
+    }
+
+    private ReplayStep readStep(int index) {
+        ByteBuffer record = chunk.duplicate().order(TransitionRecorder.BYTE_ORDER);
+        int start = index * recordBytes;
+        byte[] preFrames = new byte[depth * frameSize];
+        byte[] postFrames = new byte[depth * frameSize];
+        record.position(start);
+        record.get(preFrames);
+        record.position(start + frameSize);
+        record.get(postFrames);
+        int action = record.get();
+        float reward = record.getFloat();
+        boolean terminal = record.get() != 0;
+        return new ReplayStep(shape, preFrames, postFrames, action, actionCount, reward, terminal);
+    }
+
+    private int[] shuffled(int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,130 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.rl.env.FrameStep;
+import com.kingyu.rlbird.rl.env.RlEnv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Appends the transitions played to a file, for {@link TransitionDataset} to train on offline.
+ *
+ * <p>The file starts with a little-endian header: a magic number, the format version, the depth,
+ * height and width of the observations and the number of actions. Then every transition is a
+ * record of the same size: the {@code depth + 1} frames of the transition as uint8 pixels, oldest
+ * first, so that the first {@code depth} frames are the observation before the action and the last
+ * {@code depth} frames the observation after it, then the action (byte), the reward (float) and
+ * whether the episode ended (byte). The records stand alone, so the file can be read in any
+ * order, and recording again appends to it. A record cut short by a crash is ignored when read.
+ *
+ * <p>The steps must be {@link FrameStep}s, the stacks are rebuilt from their frames the same way
+ * {@link ColumnarReplayBuffer} does. The environments of a run can share one recorder.
+ */
+public class TransitionRecorder implements AutoCloseable {
+
+    static final int MAGIC = 0x54524e53; // "TRNS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final int depth;
+    private final int frameSize;
+    private final FileChannel channel;
+    private final ByteBuffer record;
+    private final Map<Integer, byte[][]> episodeFrames;
+
+    /**
+     * Constructs a {@link TransitionRecorder}.
+     *
+     * @param file        the file to append to, created if it does not exist
+     * @param depth       the number of frames stacked in an observation
+     * @param height      the height of a frame
+     * @param width       the width of a frame
+     * @param actionCount the number of actions
+     * @throws IOException if the file cannot be written, or holds transitions of other shapes
+     */
+    public TransitionRecorder(Path file, int depth, int height, int width, int actionCount) throws IOException {
+        this.depth = depth;
+        this.frameSize = height * width;
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+        header.putInt(MAGIC).putInt(VERSION).putInt(depth).putInt(height).putInt(width).putInt(actionCount);
+        header.flip();
+        if (channel.size() == 0) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } else if (!header.equals(TransitionDataset.readHeader(file))) {
+            channel.close();
+            throw new IOException("The transitions in " + file + " have other shapes");
+        }
+        record = ByteBuffer.allocateDirect(recordBytes(depth, frameSize)).order(BYTE_ORDER);
+        episodeFrames = new HashMap<>();
+    }
+
+    /**
+     * Appends the transitions of some steps.
+     *
+     * @param steps the steps taken, in order for each environment
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void record(RlEnv.Step[] steps) throws IOException {
+        for (RlEnv.Step step : steps) {
+            if (!(step instanceof FrameStep)) {
+                throw new IllegalArgumentException("TransitionRecorder only records FrameSteps");
+            }
+            FrameStep frameStep = (FrameStep) step;
+            byte[][] frames = episodeFrames.get(frameStep.getEnvId());
+            if (frames == null || frameStep.isEpisodeStart()) {
+                frames = new byte[depth][];
+                for (int i = 0; i < depth; i++) {
+                    frames[i] = frameStep.getPreFrame();
+                }
+                episodeFrames.put(frameStep.getEnvId(), frames);
+            }
+
+            record.clear();
+            for (byte[] frame : frames) {
+                record.put(frame, 0, frameSize);
+            }
+            record.put(frameStep.getPostFrame(), 0, frameSize);
+            record.put((byte) frameStep.getActionIndex());
+            record.putFloat(frameStep.getRewardValue());
+            record.put((byte) (frameStep.isTerminal() ? 1 : 0));
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+
+            if (frameStep.isTerminal()) {
+                episodeFrames.remove(frameStep.getEnvId());
+            } else {
+                System.arraycopy(frames, 1, frames, 0, depth - 1);
+                frames[depth - 1] = frameStep.getPostFrame();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    static int recordBytes(int depth, int frameSize) {
+        return (depth + 1) * frameSize + 1 + Float.BYTES + 1;
+    }
+}
@@ -0,0 +1,16 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.rl.env.Transition;
+
+/**
+ * Takes {@link Transition}s, the frames and primitive values of steps, to store or send them.
+ */
+public interface TransitionSink {
+
+    /**
+     * Adds a transition. The transitions of each environment must be added in order.
+     *
+     * @param transition the transition to add
+     */
+    void addTransition(Transition transition);
+}
@@ -1,11 +1,14 @@
 package com.kingyu.rlbird.rl.agent;
 
+import com.kingyu.rlbird.rl.TransitionBatch;
 import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.VecEnv;
 import ai.djl.ndarray.NDList;
 import ai.djl.training.tracker.Tracker;
-import ai.djl.util.RandomUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.kingyu.rlbird.util.EventLog;
+import com.kingyu.rlbird.util.Seeds;
+
+import java.util.SplittableRandom;
 
 /**
  * The {@link ai.djl.modality.rl.agent.EpsilonGreedy} is a simple exploration/excitation agent.
@@ -22,6 +25,7 @@ public class EpsilonGreedy implements RlAgent {
 
     private final RlAgent baseAgent;
     private final Tracker exploreRate;
+    private final SplittableRandom random;
     private int counter;
 
     /**
@@ -31,23 +35,61 @@ public class EpsilonGreedy implements RlAgent {
      * @param exploreRate the probability of taking a random action
      */
     public EpsilonGreedy(RlAgent baseAgent, Tracker exploreRate) {
+        this(baseAgent, exploreRate, Seeds.split());
+    }
+
+    /**
+     * Constructs an {@link ai.djl.modality.rl.agent.EpsilonGreedy} drawing from its own generator.
+     *
+     * @param baseAgent   the (presumably model-based) agent to use for exploitation and to train
+     * @param exploreRate the probability of taking a random action
+     * @param random      the generator of the random actions
+     */
+    public EpsilonGreedy(RlAgent baseAgent, Tracker exploreRate, SplittableRandom random) {
         this.baseAgent = baseAgent;
         this.exploreRate = exploreRate;
+        this.random = random;
     }
 
-    private static final Logger logger = LoggerFactory.getLogger(EpsilonGreedy.class);
-
     /**
      * {@inheritDoc}
      */
     @Override
     public NDList chooseAction(RlEnv env, boolean training) {
-        if (training && RandomUtils.random() < exploreRate.getNewValue(counter++)) {
-            logger.info("***********RANDOM ACTION***********");
-            return env.getActionSpace().randomAction();
+        if (training && random.nextDouble() < exploreRate.getNewValue(counter++)) {
+            int action = random.nextInt(env.getActionSpace().size());
+            EventLog.action(0, action, true, 0, 0);
+            return env.getActionSpace().get(action);
         } else return baseAgent.chooseAction(env, training);
     }
 
+    /**
+     * Chooses the actions of all environments, each one at random with the explore rate. The
+     * base agent is asked once for the whole batch, unless every action is random.
+     *
+     * @param envs the current environments
+     * @param training true if the agent is currently traning
+     * @return the action to take in each environment
+     */
+    @Override
+    public NDList[] chooseActions(VecEnv envs, boolean training) {
+        boolean[] randomRows = new boolean[envs.size()];
+        boolean anyGreedy = false;
+        for (int i = 0; i < randomRows.length; i++) {
+            randomRows[i] = training && random.nextDouble() < exploreRate.getNewValue(counter++);
+            anyGreedy |= !randomRows[i];
+        }
+        NDList[] actions = anyGreedy ? baseAgent.chooseActions(envs, training) : new NDList[randomRows.length];
+        for (int i = 0; i < randomRows.length; i++) {
+            if (randomRows[i]) {
+                int action = random.nextInt(envs.getEnv(i).getActionSpace().size());
+                EventLog.action(i, action, true, 0, 0);
+                actions[i] = envs.getEnv(i).getActionSpace().get(action);
+            }
+        }
+        return actions;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -55,4 +97,12 @@ public class EpsilonGreedy implements RlAgent {
     public void trainBatch(RlEnv.Step[] batchSteps) {
         baseAgent.trainBatch(batchSteps);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void trainBatch(TransitionBatch batch) {
+        baseAgent.trainBatch(batch);
+    }
 }
@@ -0,0 +1,116 @@
+package com.kingyu.rlbird.rl.agent;
+
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.training.ParameterStore;
+import ai.djl.training.initializer.NormalInitializer;
+import com.kingyu.rlbird.util.ParameterUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An inference-only copy of the Q-network that actions are chosen with while another thread trains
+ * the network.
+ *
+ * <p>Evaluating the trained network while the optimizer updates it reads half-updated parameters.
+ * Instead, the trainer publishes a copy of its parameters every {@code publishInterval} training
+ * steps, and the actors evaluate the latest copy published, which is never written while it can be
+ * read. There are two copies: the front one is read, the back one is written on a publish and then
+ * swapped to the front. Neither side takes a lock. An actor counts itself on the front copy while
+ * evaluating it; if an actor still reads the back copy, from before the last swap, the trainer skips
+ * the publish and tries again at the next training step rather than wait.
+ */
+public class PolicySnapshot {
+
+    private final Block onlineBlock;
+    private final int publishInterval;
+    private final AtomicReference<Copy> front;
+    private Copy back;
+    private int steps;
+    private boolean pending;
+
+    /**
+     * Constructs a {@link PolicySnapshot} starting as a copy of the trained network.
+     *
+     * @param onlineBlock     the initialized block being trained
+     * @param firstBlock      a new block built the same way, to hold one copy
+     * @param secondBlock     another new block built the same way, to hold the other copy
+     * @param manager         the manager to create the parameters of the copies in
+     * @param inputShape      the shape of an input batch
+     * @param publishInterval the number of training steps between two publishes
+     */
+    public PolicySnapshot(Block onlineBlock, Block firstBlock, Block secondBlock, NDManager manager,
+                          Shape inputShape, int publishInterval) {
+        if (publishInterval < 1) {
+            throw new IllegalArgumentException("Invalid publish interval " + publishInterval);
+        }
+        this.onlineBlock = onlineBlock;
+        this.publishInterval = publishInterval;
+        front = new AtomicReference<>(new Copy(firstBlock, manager, inputShape));
+        back = new Copy(secondBlock, manager, inputShape);
+        ParameterUtil.copy(onlineBlock, firstBlock);
+        ParameterUtil.copy(onlineBlock, secondBlock);
+    }
+
+    /**
+     * Predicts the Q-values of a batch of observations with the latest copy published. It can be
+     * called from any number of threads.
+     *
+     * @param observations the observations
+     * @return the Q-value of every action for every observation
+     */
+    public NDList evaluate(NDList observations) {
+        Copy copy;
+        while (true) {
+            copy = front.get();
+            copy.readers.incrementAndGet();
+            // the copy may have been swapped to the back before it was counted
+            if (front.get() == copy) {
+                break;
+            }
+            copy.readers.decrementAndGet();
+        }
+        try {
+            return copy.block.forward(copy.parameterStore, observations, false);
+        } finally {
+            copy.readers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a training step and publishes the parameters of the trained network when it is due.
+     * It must be called on the thread that trains the network.
+     */
+    public void step() {
+        steps++;
+        if (steps % publishInterval == 0) {
+            pending = true;
+        }
+        if (pending && back.readers.get() == 0) {
+            ParameterUtil.copy(onlineBlock, back.block);
+            back = front.getAndSet(back);
+            pending = false;
+        }
+    }
+
+    /**
+     * One of the two copies of the network.
+     */
+    private static final class Copy {
+        private final Block block;
+        private final ParameterStore parameterStore;
+        private final AtomicInteger readers;
+
+        Copy(Block block, NDManager manager, Shape inputShape) {
+            this.block = block;
+            block.setInitializer(new NormalInitializer());
+            block.initialize(manager, DataType.FLOAT32, inputShape);
+            parameterStore = new ParameterStore(manager, false);
+            readers = new AtomicInteger();
+        }
+    }
+}
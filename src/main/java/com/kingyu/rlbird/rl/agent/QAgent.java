@@ -2,17 +2,22 @@ package com.kingyu.rlbird.rl.agent;
 
 import ai.djl.ndarray.NDArrays;
 import ai.djl.ndarray.NDManager;
+import com.kingyu.rlbird.metrics.Metrics;
 import com.kingyu.rlbird.rl.ActionSpace;
+import com.kingyu.rlbird.rl.PriorityUpdater;
+import com.kingyu.rlbird.rl.ReplayStep;
+import com.kingyu.rlbird.rl.TransitionBatch;
+import com.kingyu.rlbird.rl.env.FrameStep;
 import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.VecEnv;
 import com.kingyu.rlbird.rl.env.RlEnv.Step;
+import com.kingyu.rlbird.util.EventLog;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
 import ai.djl.training.GradientCollector;
 import ai.djl.training.Trainer;
 import ai.djl.training.listener.TrainingListener.BatchData;
 import ai.djl.translate.Batchifier;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 
 import java.util.Arrays;
@@ -35,6 +40,9 @@ public class QAgent implements RlAgent {
 
     private final Trainer trainer;
     private final float rewardDiscount;
+    private final PriorityUpdater priorityUpdater;
+    private final TargetNetwork targetNetwork;
+    private final PolicySnapshot policySnapshot;
 
     /**
      * Constructs a {@link ai.djl.modality.rl.agent.QAgent} with a custom {@link Batchifier}.
@@ -43,22 +51,100 @@ public class QAgent implements RlAgent {
      * @param rewardDiscount the reward discount to apply to rewards from future states
      */
     public QAgent(Trainer trainer, float rewardDiscount) {
+        this(trainer, rewardDiscount, null);
+    }
+
+    /**
+     * Constructs a {@link QAgent} that trains on prioritized steps.
+     *
+     * <p>The loss of every step is scaled by the importance-sampling weight of its
+     * {@link ReplayStep}, and the TD errors of the batch are given back to the updater.
+     *
+     * @param trainer         the trainer for the model to learn
+     * @param rewardDiscount  the reward discount to apply to rewards from future states
+     * @param priorityUpdater the replay buffer to give the TD errors to, or null
+     */
+    public QAgent(Trainer trainer, float rewardDiscount, PriorityUpdater priorityUpdater) {
+        this(trainer, rewardDiscount, priorityUpdater, null);
+    }
+
+    /**
+     * Constructs a {@link QAgent} that computes its targets with a {@link TargetNetwork}.
+     *
+     * @param trainer         the trainer for the model to learn
+     * @param rewardDiscount  the reward discount to apply to rewards from future states
+     * @param priorityUpdater the replay buffer to give the TD errors to, or null
+     * @param targetNetwork   the network to compute the targets with, or null to use the trained one
+     */
+    public QAgent(Trainer trainer, float rewardDiscount, PriorityUpdater priorityUpdater,
+                  TargetNetwork targetNetwork) {
+        this(trainer, rewardDiscount, priorityUpdater, targetNetwork, null);
+    }
+
+    /**
+     * Constructs a {@link QAgent} that chooses its actions with a {@link PolicySnapshot}, so that
+     * they can be chosen on other threads while it trains.
+     *
+     * @param trainer         the trainer for the model to learn
+     * @param rewardDiscount  the reward discount to apply to rewards from future states
+     * @param priorityUpdater the replay buffer to give the TD errors to, or null
+     * @param targetNetwork   the network to compute the targets with, or null to use the trained one
+     * @param policySnapshot  the network to choose the actions with, or null to use the trained one
+     */
+    public QAgent(Trainer trainer, float rewardDiscount, PriorityUpdater priorityUpdater,
+                  TargetNetwork targetNetwork, PolicySnapshot policySnapshot) {
         this.trainer = trainer;
         this.rewardDiscount = rewardDiscount;
+        this.priorityUpdater = priorityUpdater;
+        this.targetNetwork = targetNetwork;
+        this.policySnapshot = policySnapshot;
     }
 
-    private static final Logger logger = LoggerFactory.getLogger(QAgent.class);
-
     /**
      * {@inheritDoc}
      */
     @Override
     public NDList chooseAction(RlEnv env, boolean training) {
+        long start = System.nanoTime();
         ActionSpace actionSpace = env.getActionSpace();
-        NDArray actionReward = trainer.evaluate(env.getObservation()).singletonOrThrow().get(0);
-        logger.info(Arrays.toString(actionReward.toFloatArray()));
-        int bestAction = Math.toIntExact(actionReward.argMax().getLong());
-        return actionSpace.get(bestAction);
+        // the arrays of the forward pass go to the manager of its input, so the observation of the
+        // environment, which lives as long as it, is copied into one freed right after
+        try (NDManager temporaryManager = NDManager.newBaseManager()) {
+            NDArray observation = env.getObservation().singletonOrThrow().duplicate();
+            observation.attach(temporaryManager);
+            float[] rewards = evaluate(new NDList(observation)).singletonOrThrow().get(0).toFloatArray();
+            int bestAction = argMax(rewards, 0, rewards.length);
+            logAction(0, bestAction, rewards, 0);
+            Metrics.CHOOSE_ACTION.record(start);
+            return actionSpace.get(bestAction);
+        }
+    }
+
+    /**
+     * Chooses the best action of every environment from a single forward pass over all their
+     * observations, read back in one copy.
+     *
+     * @param envs the current environments
+     * @param training true if the agent is currently traning
+     * @return the action to take in each environment
+     */
+    @Override
+    public NDList[] chooseActions(VecEnv envs, boolean training) {
+        long start = System.nanoTime();
+        try (NDManager temporaryManager = NDManager.newBaseManager()) {
+            NDArray actionRewards = evaluate(envs.getObservations(temporaryManager)).singletonOrThrow();
+            int actionCount = Math.toIntExact(actionRewards.getShape().get(1));
+            float[] rewards = actionRewards.toFloatArray();
+            NDList[] actions = new NDList[envs.size()];
+            for (int i = 0; i < actions.length; i++) {
+                int offset = i * actionCount;
+                int bestAction = argMax(rewards, offset, actionCount);
+                logAction(i, bestAction, rewards, offset);
+                actions[i] = envs.getEnv(i).getActionSpace().get(bestAction);
+            }
+            Metrics.CHOOSE_ACTION.record(start);
+            return actions;
+        }
     }
 
     /**
@@ -66,61 +152,126 @@ public class QAgent implements RlAgent {
      */
     @Override
     public void trainBatch(Step[] batchSteps) {
-        BatchData batchData =
-                new BatchData(null, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        // temporary manager for the arrays of the batch, all freed once trained on
+        try (NDManager temporaryManager = NDManager.newBaseManager()) {
+            NDList preObservationBatch = new NDList();
+            Arrays.stream(batchSteps).forEach(step -> preObservationBatch.addAll(step.getPreObservation(temporaryManager)));
+            NDList preInput = new NDList(NDArrays.concat(preObservationBatch, 0));
 
-        // temporary manager for attaching NDArray to reduce the gpu memory usage
-        NDManager temporaryManager = NDManager.newBaseManager();
+            NDList postObservationBatch = new NDList();
+            Arrays.stream(batchSteps).forEach(step -> postObservationBatch.addAll(step.getPostObservation(temporaryManager)));
+            NDList postInput = new NDList(NDArrays.concat(postObservationBatch, 0));
 
-        NDList preObservationBatch = new NDList();
-        Arrays.stream(batchSteps).forEach(step -> preObservationBatch.addAll(step.getPreObservation(temporaryManager)));
-        NDList preInput = new NDList(NDArrays.concat(preObservationBatch, 0));
+            // the actions belong to the environments, so the stacked copy is moved to the batch
+            NDList actionBatch = new NDList();
+            Arrays.stream(batchSteps).forEach(step -> actionBatch.addAll(step.getAction()));
+            NDArray actionInput = NDArrays.stack(actionBatch, 0);
+            actionInput.attach(temporaryManager);
 
-        NDList postObservationBatch = new NDList();
-        Arrays.stream(batchSteps).forEach(step -> postObservationBatch.addAll(step.getPostObservation(temporaryManager)));
-        NDList postInput = new NDList(NDArrays.concat(postObservationBatch, 0));
+            boolean[] terminals = new boolean[batchSteps.length];
+            float[] weights = new float[batchSteps.length];
+            float[] rewards = new float[batchSteps.length];
+            for (int i = 0; i < batchSteps.length; i++) {
+                terminals[i] = batchSteps[i].isTerminal();
+                weights[i] = batchSteps[i] instanceof ReplayStep ? ((ReplayStep) batchSteps[i]).getWeight() : 1f;
+                rewards[i] = batchSteps[i] instanceof FrameStep
+                        ? ((FrameStep) batchSteps[i]).getRewardValue()
+                        : batchSteps[i].getReward().getFloat();
+            }
 
-        NDList actionBatch = new NDList();
-        Arrays.stream(batchSteps).forEach(step -> actionBatch.addAll(step.getAction()));
-        NDList actionInput = new NDList(NDArrays.stack(actionBatch, 0));
+            train(batchSteps, preInput, postInput, actionInput, temporaryManager.create(rewards),
+                    terminals, weights, temporaryManager);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void trainBatch(TransitionBatch batch) {
+        try (NDManager temporaryManager = NDManager.newBaseManager()) {
+            train(batch.getSteps(),
+                    new NDList(batch.getPreObservations(temporaryManager)),
+                    new NDList(batch.getPostObservations(temporaryManager)),
+                    batch.getActions(temporaryManager),
+                    batch.getRewards(temporaryManager),
+                    batch.getTerminals(), batch.getWeights(), temporaryManager);
+        }
+    }
 
-        NDList rewardBatch = new NDList();
-        Arrays.stream(batchSteps).forEach(step -> rewardBatch.addAll(new NDList(step.getReward())));
-        NDList rewardInput = new NDList(NDArrays.stack(rewardBatch, 0));
+    private NDList evaluate(NDList observations) {
+        return policySnapshot != null ? policySnapshot.evaluate(observations) : trainer.evaluate(observations);
+    }
 
+    private static int argMax(float[] values, int offset, int length) {
+        int best = 0;
+        for (int i = 1; i < length; i++) {
+            if (values[offset + i] > values[offset + best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static void logAction(int env, int action, float[] rewards, int offset) {
+        EventLog.action(env, action, false, rewards[offset], rewards.length > offset + 1 ? rewards[offset + 1] : 0);
+    }
+
+    private void train(Step[] batchSteps, NDList preInput, NDList postInput, NDArray actionInput,
+                       NDArray rewardInput, boolean[] terminals, float[] weights, NDManager temporaryManager) {
+        BatchData batchData =
+                new BatchData(null, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+
+        // the targets are computed before recording, so no gradient flows through them
+        NDArray targetQReward = targetNetwork != null
+                ? targetNetwork.evaluate(postInput).singletonOrThrow()
+                : trainer.evaluate(postInput).singletonOrThrow();
+        float[] notTerminal = new float[terminals.length];
+        for (int i = 0; i < terminals.length; i++) {
+            notTerminal[i] = terminals[i] ? 0 : 1;
+        }
+        NDList targetQ = new NDList(targetQReward.max(new int[]{1})
+                .mul(temporaryManager.create(notTerminal))
+                .muli(rewardDiscount)
+                .addi(rewardInput));
+
+        long start = System.nanoTime();
         try (GradientCollector collector = trainer.newGradientCollector()) {
             NDList QReward = trainer.forward(preInput);
-            NDList targetQReward = trainer.forward(postInput);
 
             NDList Q = new NDList(QReward.singletonOrThrow()
-                    .mul(actionInput.singletonOrThrow())
+                    .mul(actionInput)
                     .sum(new int[]{1}));
 
-            NDArray[] targetQValue = new NDArray[batchSteps.length];
-            for (int i = 0; i < batchSteps.length; i++) {
-                if (batchSteps[i].isTerminal()) {
-                    targetQValue[i] = batchSteps[i].getReward();
-                } else {
-                    targetQValue[i] = targetQReward.singletonOrThrow().get(i)
-                            .max()
-                            .mul(rewardDiscount)
-                            .add(rewardInput.singletonOrThrow().get(i));
-                }
+            NDArray lossValue;
+            if (priorityUpdater == null) {
+                lossValue = trainer.getLoss().evaluate(targetQ, Q);
+            } else {
+                // the same L2 loss, with every step weighted by its importance-sampling weight
+                lossValue = targetQ.singletonOrThrow().sub(Q.singletonOrThrow()).square()
+                        .mul(temporaryManager.create(weights))
+                        .mul(0.5f)
+                        .mean();
             }
-            NDList targetQBatch = new NDList();
-            Arrays.stream(targetQValue).forEach(value -> targetQBatch.addAll(new NDList(value)));
-            NDList targetQ = new NDList(NDArrays.stack(targetQBatch, 0));
-
-            NDArray lossValue = trainer.getLoss().evaluate(targetQ, Q);
             collector.backward(lossValue);
+            if (priorityUpdater != null) {
+                float[] tdErrors = targetQ.singletonOrThrow().sub(Q.singletonOrThrow()).abs().toFloatArray();
+                priorityUpdater.updatePriorities(batchSteps, tdErrors);
+            }
             batchData.getLabels().put(targetQ.singletonOrThrow().getDevice(), targetQ);
             batchData.getPredictions().put(Q.singletonOrThrow().getDevice(), Q);
+            Metrics.FORWARD_BACKWARD.record(start);
+            start = System.nanoTime();
             this.trainer.step();
+            Metrics.OPTIMIZER_STEP.record(start);
+        }
+        Metrics.TRAIN_STEPS.increment();
+        Metrics.TRAIN_SAMPLES.add(terminals.length);
+        if (targetNetwork != null) {
+            targetNetwork.step();
         }
-        for (Step step : batchSteps) {
-            step.getPreObservation().attach(step.getManager());
-            step.getPostObservation().attach(step.getManager());
+        if (policySnapshot != null) {
+            policySnapshot.step();
         }
-        temporaryManager.close();  // close the temporary manager
     }
 }
@@ -1,6 +1,8 @@
 package com.kingyu.rlbird.rl.agent;
 
+import com.kingyu.rlbird.rl.TransitionBatch;
 import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.VecEnv;
 import ai.djl.ndarray.NDList;
 
 /**
@@ -17,10 +19,27 @@ public interface RlAgent {
      */
     NDList chooseAction(RlEnv env, boolean training);
 
+    /**
+     * Chooses the next action to take within every environment of a {@link VecEnv} at once.
+     *
+     * @param envs the current environments
+     * @param training true if the agent is currently traning
+     * @return the action to take in each environment
+     */
+    NDList[] chooseActions(VecEnv envs, boolean training);
+
     /**
      * Trains this {@link ai.djl.modality.rl.agent.RlAgent} on a batch of {@link RlEnv.Step}s.
      *
      * @param batchSteps the steps to train on
      */
     void trainBatch(RlEnv.Step[] batchSteps);
+
+    /**
+     * Trains this {@link ai.djl.modality.rl.agent.RlAgent} on a batch already collated into
+     * contiguous buffers.
+     *
+     * @param batch the batch to train on
+     */
+    void trainBatch(TransitionBatch batch);
 }
@@ -0,0 +1,74 @@
+package com.kingyu.rlbird.rl.agent;
+
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Block;
+import ai.djl.training.ParameterStore;
+import ai.djl.training.initializer.NormalInitializer;
+import com.kingyu.rlbird.util.ParameterUtil;
+
+/**
+ * A lagging copy of the Q-network that the targets of Deep-Q Learning are computed with.
+ *
+ * <p>Computing the targets with the network being trained makes them move with every update. The
+ * target network is only synced with the trained network every {@code syncInterval} training
+ * steps, either by copying its parameters ({@code tau = 1}, a hard sync) or by moving them part of
+ * the way ({@code tau < 1}, a soft sync). It is evaluated without recording gradients, so none of
+ * its activations are kept for the backward pass.
+ */
+public class TargetNetwork {
+
+    private final Block onlineBlock;
+    private final Block targetBlock;
+    private final ParameterStore parameterStore;
+    private final int syncInterval;
+    private final float tau;
+    private int steps;
+
+    /**
+     * Constructs a {@link TargetNetwork} starting as a copy of the trained network.
+     *
+     * @param onlineBlock  the initialized block being trained
+     * @param targetBlock  a new block built the same way, to hold the target network
+     * @param manager      the manager to create the parameters of the target network in
+     * @param inputShape   the shape of an input batch
+     * @param syncInterval the number of training steps between two syncs
+     * @param tau          how far to move the target network towards the trained one on a sync
+     */
+    public TargetNetwork(Block onlineBlock, Block targetBlock, NDManager manager, Shape inputShape,
+                         int syncInterval, float tau) {
+        if (syncInterval < 1 || tau <= 0 || tau > 1) {
+            throw new IllegalArgumentException("Invalid sync interval " + syncInterval + " or tau " + tau);
+        }
+        this.onlineBlock = onlineBlock;
+        this.targetBlock = targetBlock;
+        this.syncInterval = syncInterval;
+        this.tau = tau;
+        targetBlock.setInitializer(new NormalInitializer());
+        targetBlock.initialize(manager, DataType.FLOAT32, inputShape);
+        ParameterUtil.copy(onlineBlock, targetBlock);
+        parameterStore = new ParameterStore(manager, false);
+    }
+
+    /**
+     * Predicts the Q-values of a batch of observations, without recording gradients.
+     *
+     * @param observations the observations
+     * @return the Q-value of every action for every observation
+     */
+    public NDList evaluate(NDList observations) {
+        return targetBlock.forward(parameterStore, observations, false);
+    }
+
+    /**
+     * Counts a training step and syncs with the trained network when it is due.
+     */
+    public void step() {
+        steps++;
+        if (steps % syncInterval == 0) {
+            ParameterUtil.blend(onlineBlock, targetBlock, tau);
+        }
+    }
+}
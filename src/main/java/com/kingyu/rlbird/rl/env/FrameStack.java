@@ -0,0 +1,155 @@
+package com.kingyu.rlbird.rl.env;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Keeps the last few grayscale frames of an environment and stacks them into an observation.
+ *
+ * <p>The frames live in a fixed circular buffer, so pushing a frame only overwrites the oldest one.
+ * An observation is built by a single copy of the frames, oldest first, into a reused staging
+ * buffer, which is then handed to the engine in one call.
+ */
+public class FrameStack {
+
+    private static final float[] PIXEL_VALUES = new float[256];
+
+    static {
+        for (int i = 0; i < PIXEL_VALUES.length; i++) {
+            PIXEL_VALUES[i] = i / 255f;
+        }
+    }
+
+    private final int depth;
+    private final int frameSize;
+    private final Shape shape;
+    private final byte[][] frames;
+    private final FloatBuffer staging;
+    private int newest;
+
+    /**
+     * Constructs a {@link FrameStack}.
+     *
+     * @param depth  the number of frames in an observation
+     * @param height the height of a frame
+     * @param width  the width of a frame
+     */
+    public FrameStack(int depth, int height, int width) {
+        this.depth = depth;
+        this.frameSize = height * width;
+        this.shape = new Shape(1, depth, height, width);
+        this.frames = new byte[depth][frameSize];
+        this.staging = ByteBuffer.allocateDirect(depth * frameSize * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+
+    /**
+     * Starts a new episode: every frame of the stack becomes the given frame.
+     *
+     * @param frame the first frame of the episode
+     */
+    public void reset(byte[] frame) {
+        for (byte[] slot : frames) {
+            System.arraycopy(frame, 0, slot, 0, frameSize);
+        }
+        newest = 0;
+    }
+
+    /**
+     * Adds a frame, dropping the oldest one.
+     *
+     * @param frame the new frame
+     */
+    public void push(byte[] frame) {
+        newest = (newest + 1) % depth;
+        System.arraycopy(frame, 0, frames[newest], 0, frameSize);
+    }
+
+    /**
+     * Returns one of the frames. The array is reused once the frame leaves the stack.
+     *
+     * @param age 0 for the newest frame, up to {@code depth - 1} for the oldest
+     * @return the grayscale pixels of the frame
+     */
+    public byte[] getFrame(int age) {
+        return frames[Math.floorMod(newest - age, depth)];
+    }
+
+    /**
+     * Returns the number of frames in an observation.
+     *
+     * @return the number of frames in an observation
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Stacks the frames, oldest first, into an observation of shape (1, depth, height, width).
+     *
+     * @param manager the manager to create the observation in
+     * @return the observation
+     */
+    public NDArray toNDArray(NDManager manager) {
+        fillStaging();
+        return manager.create(staging, shape);
+    }
+
+    /**
+     * Stacks the frames, oldest first, into an existing observation of shape
+     * (1, depth, height, width), so that an observation is refilled every step instead of created.
+     *
+     * @param observation the observation to overwrite
+     */
+    public void copyTo(NDArray observation) {
+        fillStaging();
+        observation.set(staging);
+    }
+
+    /**
+     * Stacks frames kept outside the stack, oldest first, into an observation of the same shape as
+     * {@link #toNDArray(NDManager)}. It shares nothing with the stack, so it may be called from any
+     * thread.
+     *
+     * @param frames  the frames of the observation, oldest first
+     * @param manager the manager to create the observation in
+     * @return the observation
+     */
+    public NDArray toNDArray(byte[][] frames, NDManager manager) {
+        float[] values = new float[depth * frameSize];
+        for (int f = 0; f < depth; f++) {
+            byte[] frame = frames[f];
+            int offset = f * frameSize;
+            for (int i = 0; i < frameSize; i++) {
+                values[offset + i] = PIXEL_VALUES[frame[i] & 0xff];
+            }
+        }
+        return manager.create(values, shape);
+    }
+
+    /**
+     * Returns the shape of an observation.
+     *
+     * @return (1, depth, height, width)
+     */
+    public Shape getShape() {
+        return shape;
+    }
+
+    private void fillStaging() {
+        staging.clear();
+        for (int age = depth - 1; age >= 0; age--) {
+            byte[] frame = getFrame(age);
+            for (int i = 0; i < frameSize; i++) {
+                staging.put(PIXEL_VALUES[frame[i] & 0xff]);
+            }
+        }
+        staging.flip();
+    }
+}
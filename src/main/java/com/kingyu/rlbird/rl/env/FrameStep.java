@@ -0,0 +1,10 @@
+package com.kingyu.rlbird.rl.env;
+
+/**
+ * A {@link RlEnv.Step} whose observations are stacks of grayscale frames.
+ *
+ * <p>It is also the {@link Transition} of its newest frames, so that a replay buffer can store every
+ * frame once instead of whole observations.
+ */
+public interface FrameStep extends RlEnv.Step, Transition {
+}
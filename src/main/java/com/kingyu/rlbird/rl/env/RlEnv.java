@@ -35,8 +35,9 @@ public interface RlEnv extends AutoCloseable {
      *
      * @param action   the action to perform
      * @param training true if the step is during training
+     * @return the step taken
      */
-    void step(NDList action, boolean training);
+    Step step(NDList action, boolean training);
 
     /**
      * Runs the environment from reset until done.
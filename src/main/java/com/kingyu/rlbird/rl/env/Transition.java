@@ -0,0 +1,61 @@
+package com.kingyu.rlbird.rl.env;
+
+/**
+ * A transition as a replay buffer stores it: the newest frame of each observation and the primitive
+ * action and reward, without the observations themselves.
+ *
+ * <p>The frames of one environment form one sequence, so a buffer can store every frame once.
+ */
+public interface Transition {
+
+    /**
+     * Returns the id of the environment the transition was taken in. The frames of one environment
+     * form one sequence.
+     *
+     * @return the id of the environment
+     */
+    int getEnvId();
+
+    /**
+     * Returns whether the observation before the action is the first of an episode, whose stacked
+     * frames are all the same frame.
+     *
+     * @return true if the transition is the first of an episode
+     */
+    boolean isEpisodeStart();
+
+    /**
+     * Returns the newest frame of the observation before the action.
+     *
+     * @return the grayscale pixels of the frame
+     */
+    byte[] getPreFrame();
+
+    /**
+     * Returns the newest frame of the observation after the action.
+     *
+     * @return the grayscale pixels of the frame
+     */
+    byte[] getPostFrame();
+
+    /**
+     * Returns the index of the action taken in the {@link com.kingyu.rlbird.rl.ActionSpace}.
+     *
+     * @return the index of the action taken
+     */
+    int getActionIndex();
+
+    /**
+     * Returns the reward given for the action.
+     *
+     * @return the reward given for the action
+     */
+    float getRewardValue();
+
+    /**
+     * Returns whether the transition ends the episode.
+     *
+     * @return true if the transition ends the episode
+     */
+    boolean isTerminal();
+}
@@ -0,0 +1,242 @@
+package com.kingyu.rlbird.rl.env;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDArrays;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import com.kingyu.rlbird.rl.agent.RlAgent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Steps several independent {@link RlEnv}s together.
+ *
+ * <p>The actions are chosen on the calling thread, then every environment takes its step on its own
+ * thread. The environments may share one {@link com.kingyu.rlbird.rl.ReplayBuffer} as long as it
+ * supports concurrent {@code addStep}.
+ */
+public class VecEnv implements AutoCloseable {
+
+    private final RlEnv[] envs;
+    private final ExecutorService executorService;
+
+    /**
+     * Constructs a {@link VecEnv}.
+     *
+     * @param envs the environments to step together
+     */
+    public VecEnv(RlEnv... envs) {
+        if (envs.length == 0) {
+            throw new IllegalArgumentException("VecEnv needs at least one environment");
+        }
+        this.envs = envs.clone();
+        if (envs.length > 1) {
+            AtomicInteger threadId = new AtomicInteger();
+            executorService = Executors.newFixedThreadPool(envs.length, runnable -> {
+                Thread thread = new Thread(runnable, "vec-env-" + threadId.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executorService = null;
+        }
+    }
+
+    /**
+     * Returns the number of environments.
+     *
+     * @return the number of environments
+     */
+    public int size() {
+        return envs.length;
+    }
+
+    /**
+     * Returns one of the environments.
+     *
+     * @param index the index of the environment
+     * @return the environment
+     */
+    public RlEnv getEnv(int index) {
+        return envs[index];
+    }
+
+    /**
+     * Resets all the environments.
+     */
+    public void reset() {
+        for (RlEnv env : envs) {
+            env.reset();
+        }
+    }
+
+    /**
+     * Returns the current observations of all environments stacked along the batch axis.
+     *
+     * @param manager the manager to attach the batch to
+     * @return the batched observations
+     */
+    public NDList getObservations(NDManager manager) {
+        NDList observations = new NDList(envs.length);
+        for (RlEnv env : envs) {
+            observations.add(env.getObservation().singletonOrThrow());
+        }
+        return concat(observations, manager);
+    }
+
+    /**
+     * Takes a step in every environment in parallel.
+     *
+     * @param actions  the action for each environment
+     * @param training true if the step is during training
+     * @return the steps taken
+     */
+    public Result step(NDList[] actions, boolean training) {
+        if (actions.length != envs.length) {
+            throw new IllegalArgumentException("Expected " + envs.length + " actions, got " + actions.length);
+        }
+        RlEnv.Step[] steps = new RlEnv.Step[envs.length];
+        float[] rewards = new float[envs.length];
+        boolean[] terminals = new boolean[envs.length];
+        if (executorService == null) {
+            steps[0] = envs[0].step(actions[0], training);
+            rewards[0] = rewardOf(steps[0]);
+            terminals[0] = steps[0].isTerminal();
+            return new Result(steps, rewards, terminals);
+        }
+
+        List<Future<?>> futures = new ArrayList<>(envs.length);
+        for (int i = 0; i < envs.length; i++) {
+            final int index = i;
+            futures.add(executorService.submit((Callable<Object>) () -> {
+                steps[index] = envs[index].step(actions[index], training);
+                rewards[index] = rewardOf(steps[index]);
+                terminals[index] = steps[index].isTerminal();
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stepping the environments", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to step an environment", e.getCause());
+        }
+        return new Result(steps, rewards, terminals);
+    }
+
+    /**
+     * Resets the environments, chooses the actions of all of them in one batch and takes a step.
+     *
+     * @param agent    the agent to choose the actions with
+     * @param training true to run while training. When training, the steps will be recorded
+     * @return the steps taken
+     */
+    public Result runEnvironment(RlAgent agent, boolean training) {
+        reset();
+        return step(agent.chooseActions(this, training), training);
+    }
+
+    /**
+     * Returns a batch of steps from the replay buffer of the first environment, which is the buffer
+     * of all environments when they share one.
+     *
+     * @return a batch of steps
+     */
+    public RlEnv.Step[] getBatch() {
+        return envs[0].getBatch();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        for (RlEnv env : envs) {
+            env.close();
+        }
+    }
+
+    private static float rewardOf(RlEnv.Step step) {
+        // a frame step has the reward at hand, without creating an array to read it back from
+        return step instanceof FrameStep ? ((FrameStep) step).getRewardValue() : step.getReward().getFloat();
+    }
+
+    private static NDList concat(NDList observations, NDManager manager) {
+        // concat refuses a single array, copy it instead so the environment keeps its own
+        NDArray batch = observations.size() == 1
+                ? observations.singletonOrThrow().duplicate()
+                : NDArrays.concat(observations, 0);
+        batch.attach(manager);
+        return new NDList(batch);
+    }
+
+    /**
+     * The result of stepping all environments once.
+     */
+    public static final class Result {
+        private final RlEnv.Step[] steps;
+        private final float[] rewards;
+        private final boolean[] terminals;
+
+        Result(RlEnv.Step[] steps, float[] rewards, boolean[] terminals) {
+            this.steps = steps;
+            this.rewards = rewards;
+            this.terminals = terminals;
+        }
+
+        /**
+         * Returns the step taken in each environment.
+         *
+         * @return the step taken in each environment
+         */
+        public RlEnv.Step[] getSteps() {
+            return steps;
+        }
+
+        /**
+         * Returns the reward of each environment.
+         *
+         * @return the reward of each environment
+         */
+        public float[] getRewards() {
+            return rewards;
+        }
+
+        /**
+         * Returns whether each environment hit a terminal state.
+         *
+         * @return whether each environment hit a terminal state
+         */
+        public boolean[] getTerminals() {
+            return terminals;
+        }
+
+        /**
+         * Returns the observations after the step stacked along the batch axis.
+         *
+         * @param manager the manager to attach the batch to
+         * @return the batched observations
+         */
+        public NDList getObservations(NDManager manager) {
+            NDList observations = new NDList(steps.length);
+            for (RlEnv.Step step : steps) {
+                observations.add(step.getPostObservation(manager).singletonOrThrow());
+            }
+            return concat(observations, manager);
+        }
+    }
+}
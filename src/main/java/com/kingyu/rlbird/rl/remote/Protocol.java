@@ -0,0 +1,170 @@
+package com.kingyu.rlbird.rl.remote;
+
+import com.kingyu.rlbird.rl.env.Transition;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The messages between the actors and the learner, over a plain TCP connection.
+ *
+ * <p>An actor opens the connection with a hello: the magic number, the version, the height and
+ * width of the frames and the number of actions (ints). Then it sends a step message per step
+ * played: {@link #STEP}, the environment (int), the flags (byte), the action (byte), the reward
+ * (float), the frame before the action if the step starts an episode, and the frame after it.
+ * Only one frame is sent per step, the learner stacks the frames as a replay buffer does.
+ *
+ * <p>The learner sends the parameters of the network to the actors: {@link #PARAMETERS}, the
+ * version (long), the number of parameters (int) and for each its number of values (int) and the
+ * values (floats). All numbers are big-endian.
+ */
+final class Protocol {
+
+    static final int MAGIC = 0x524c4252; // "RLBR"
+    static final int VERSION = 1;
+
+    static final byte STEP = 1;
+    static final byte PARAMETERS = 2;
+
+    static final byte EPISODE_START = 1;
+    static final byte TERMINAL = 2;
+
+    private Protocol() {
+    }
+
+    /**
+     * Writes the hello of an actor.
+     *
+     * @param out         the stream to write to
+     * @param height      the height of a frame
+     * @param width       the width of a frame
+     * @param actionCount the number of actions
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeHello(DataOutputStream out, int height, int width, int actionCount) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(height);
+        out.writeInt(width);
+        out.writeInt(actionCount);
+    }
+
+    /**
+     * Reads the hello of an actor, and checks that it plays with the expected shapes.
+     *
+     * @param in          the stream to read from
+     * @param height      the expected height of a frame
+     * @param width       the expected width of a frame
+     * @param actionCount the expected number of actions
+     * @throws IOException if the stream cannot be read, or the hello is not the expected one
+     */
+    static void readHello(DataInputStream in, int height, int width, int actionCount) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not an actor");
+        }
+        if (in.readInt() != height || in.readInt() != width || in.readInt() != actionCount) {
+            throw new IOException("The actor plays with other shapes");
+        }
+    }
+
+    /**
+     * Writes a step message.
+     *
+     * @param out        the stream to write to
+     * @param transition the transition of the step
+     * @throws IOException if the stream cannot be written
+     */
+    static void writeStep(DataOutputStream out, Transition transition) throws IOException {
+        byte flags = 0;
+        if (transition.isEpisodeStart()) {
+            flags |= EPISODE_START;
+        }
+        if (transition.isTerminal()) {
+            flags |= TERMINAL;
+        }
+        out.writeByte(STEP);
+        out.writeInt(transition.getEnvId());
+        out.writeByte(flags);
+        out.writeByte(transition.getActionIndex());
+        out.writeFloat(transition.getRewardValue());
+        if (transition.isEpisodeStart()) {
+            out.write(transition.getPreFrame());
+        }
+        out.write(transition.getPostFrame());
+    }
+
+    /**
+     * Reads a step message whole. A stream that ends in the middle of the message gives no step.
+     *
+     * @param in        the stream to read from
+     * @param frameSize the number of pixels of a frame
+     * @return the step, with the environment id of the actor
+     * @throws java.io.EOFException if the stream ends before the message does
+     * @throws IOException          if the stream cannot be read, or holds another message
+     */
+    static TransitionStep readStep(DataInputStream in, int frameSize) throws IOException {
+        byte type = in.readByte();
+        if (type != STEP) {
+            throw new IOException("Unknown message " + type);
+        }
+        int envId = in.readInt();
+        byte flags = in.readByte();
+        int action = in.readByte();
+        float reward = in.readFloat();
+        boolean episodeStart = (flags & EPISODE_START) != 0;
+        byte[] preFrame = null;
+        if (episodeStart) {
+            preFrame = new byte[frameSize];
+            in.readFully(preFrame);
+        }
+        byte[] postFrame = new byte[frameSize];
+        in.readFully(postFrame);
+        return new TransitionStep(envId, episodeStart, preFrame, postFrame, action, reward,
+                (flags & TERMINAL) != 0);
+    }
+
+    /**
+     * Encodes a parameters message.
+     *
+     * @param version the version of the parameters
+     * @param values  the values of each parameter
+     * @return the message
+     */
+    static byte[] encodeParameters(long version, float[][] values) {
+        int bytes = 1 + Long.BYTES + Integer.BYTES;
+        for (float[] value : values) {
+            bytes += Integer.BYTES + value.length * Float.BYTES;
+        }
+        ByteBuffer message = ByteBuffer.allocate(bytes);
+        message.put(PARAMETERS).putLong(version).putInt(values.length);
+        for (float[] value : values) {
+            message.putInt(value.length);
+            message.asFloatBuffer().put(value);
+            message.position(message.position() + value.length * Float.BYTES);
+        }
+        return message.array();
+    }
+
+    /**
+     * Reads the values of a parameters message, after its type and version.
+     *
+     * @param in the stream to read from
+     * @return the values of each parameter
+     * @throws IOException if the stream cannot be read
+     */
+    static float[][] readParameters(DataInputStream in) throws IOException {
+        float[][] values = new float[in.readInt()][];
+        byte[] buffer = new byte[0];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new float[in.readInt()];
+            if (buffer.length < values[i].length * Float.BYTES) {
+                buffer = new byte[values[i].length * Float.BYTES];
+            }
+            in.readFully(buffer, 0, values[i].length * Float.BYTES);
+            ByteBuffer.wrap(buffer, 0, values[i].length * Float.BYTES).asFloatBuffer().get(values[i]);
+        }
+        return values;
+    }
+}
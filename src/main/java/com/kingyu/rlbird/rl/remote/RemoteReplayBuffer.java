@@ -0,0 +1,169 @@
+package com.kingyu.rlbird.rl.remote;
+
+import ai.djl.nn.Block;
+import com.kingyu.rlbird.rl.StepSink;
+import com.kingyu.rlbird.rl.TransitionSink;
+import com.kingyu.rlbird.rl.env.FrameStep;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.Transition;
+import com.kingyu.rlbird.util.ParameterUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The actor side of the actor-learner split: a sink that sends the steps added to it to a
+ * {@link TransitionServer}, and receives the parameters the learner broadcasts.
+ *
+ * <p>The steps are buffered and only written when the buffer fills or {@link #flush()} is called.
+ * The parameters are read by a background thread, and only the latest ones are kept until
+ * {@link #applyParameters(Block)}.
+ */
+public class RemoteReplayBuffer implements StepSink, TransitionSink, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteReplayBuffer.class);
+
+    private final int frameSize;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final AtomicReference<float[][]> parameters;
+    private volatile boolean closed;
+
+    /**
+     * Connects to a {@link TransitionServer}.
+     *
+     * @param host        the host of the learner
+     * @param port        the port of the learner
+     * @param height      the height of a frame
+     * @param width       the width of a frame
+     * @param actionCount the number of actions
+     * @throws IOException if the learner cannot be reached
+     */
+    public RemoteReplayBuffer(String host, int port, int height, int width, int actionCount) throws IOException {
+        this.frameSize = height * width;
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        Protocol.writeHello(out, height, width, actionCount);
+        out.flush();
+        parameters = new AtomicReference<>();
+
+        Thread reader = new Thread(this::readParameters, "parameter-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends the transition of a step to the learner.
+     *
+     * @param step the {@link FrameStep} to send
+     * @throws UncheckedIOException if the learner cannot be reached any more
+     */
+    @Override
+    public void addStep(RlEnv.Step step) {
+        if (!(step instanceof FrameStep)) {
+            throw new IllegalArgumentException("RemoteReplayBuffer only sends FrameSteps");
+        }
+        addTransition((FrameStep) step);
+    }
+
+    /**
+     * Sends a transition to the learner.
+     *
+     * @param transition the transition to send
+     * @throws UncheckedIOException if the learner cannot be reached any more
+     */
+    @Override
+    public synchronized void addTransition(Transition transition) {
+        if (transition.getPostFrame().length != frameSize) {
+            throw new IllegalArgumentException("Expected frames of " + frameSize + " pixels, got "
+                    + transition.getPostFrame().length);
+        }
+        try {
+            Protocol.writeStep(out, transition);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to send a step to the learner", e);
+        }
+    }
+
+    /**
+     * Sends the steps buffered to the learner.
+     *
+     * @throws UncheckedIOException if the learner cannot be reached any more
+     */
+    public synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to send the steps to the learner", e);
+        }
+    }
+
+    /**
+     * Sets the parameters of a block to the latest ones received from the learner, if any were
+     * received since the last call.
+     *
+     * @param block the block to set, of the same structure as the one trained by the learner
+     * @return true if the parameters were set
+     */
+    public boolean applyParameters(Block block) {
+        float[][] values = parameters.getAndSet(null);
+        if (values == null) {
+            return false;
+        }
+        ParameterUtil.set(block, values);
+        return true;
+    }
+
+    /**
+     * Returns whether the connection to the learner is closed.
+     *
+     * @return true if the connection is closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the connection to the learner", e);
+        }
+    }
+
+    private void readParameters() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+            while (!closed) {
+                byte type = in.readByte();
+                if (type != Protocol.PARAMETERS) {
+                    throw new IOException("Unknown message " + type);
+                }
+                long version = in.readLong();
+                parameters.set(Protocol.readParameters(in));
+                logger.debug("Received parameters version {}", version);
+            }
+        } catch (EOFException e) {
+            logger.info("The learner closed the connection");
+        } catch (IOException e) {
+            if (!closed) {
+                logger.error("Lost the learner", e);
+            }
+        } finally {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.kingyu.rlbird.rl.remote;
+
+import ai.djl.nn.Block;
+import com.kingyu.rlbird.metrics.Metrics;
+import com.kingyu.rlbird.rl.TransitionSink;
+import com.kingyu.rlbird.rl.ReplayScheduler;
+import com.kingyu.rlbird.util.ParameterUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The learner side of the actor-learner split: receives the steps played by actor processes into
+ * a replay buffer, and sends them the parameters of the network being trained.
+ *
+ * <p>Each actor connects with {@link RemoteReplayBuffer} and is read by its own thread, which adds
+ * the steps to the replay buffer, so the buffer must support concurrent {@code addTransition}. The
+ * environments of all actors get ids of their own, numbered from 0 as they are first seen.
+ *
+ * <p>{@link #broadcast(Block)} only reads the parameters on the calling thread, a background
+ * thread sends them, so a slow actor never holds up the learner. An actor that connects later gets
+ * the last parameters broadcast, and an actor that falls behind only gets the latest ones.
+ */
+public class TransitionServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TransitionServer.class);
+
+    private final TransitionSink replayBuffer;
+    private final ReplayScheduler scheduler;
+    private final int height;
+    private final int width;
+    private final int actionCount;
+    private final ServerSocket serverSocket;
+    private final List<Connection> connections;
+    private final AtomicInteger nextEnvId;
+    private final AtomicLong steps;
+    private final Thread acceptThread;
+    private final Thread broadcastThread;
+
+    private long version;
+    private byte[] parameters;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a {@link TransitionServer} listening on the loopback interface.
+     *
+     * @param port         the port to listen on, 0 for any free port
+     * @param replayBuffer the replay buffer to add the steps received to
+     * @param height       the height of a frame
+     * @param width        the width of a frame
+     * @param actionCount  the number of actions
+     * @throws IOException if the port cannot be listened on
+     */
+    public TransitionServer(int port, TransitionSink replayBuffer, int height, int width, int actionCount)
+            throws IOException {
+        this(port, replayBuffer, null, height, width, actionCount);
+    }
+
+    /**
+     * Constructs a {@link TransitionServer} listening on the loopback interface, which counts the
+     * steps received as game steps of a {@link ReplayScheduler}, so that the learner trains in
+     * ratio to the steps of its actors. The steps are only read when the scheduler lets the games
+     * play, which holds the actors back while the trainer is behind, and the scheduler is shut down
+     * once the last actor connected is lost.
+     *
+     * @param port         the port to listen on, 0 for any free port
+     * @param replayBuffer the replay buffer to add the steps received to
+     * @param scheduler    the scheduler to count the steps received with, or null
+     * @param height       the height of a frame
+     * @param width        the width of a frame
+     * @param actionCount  the number of actions
+     * @throws IOException if the port cannot be listened on
+     */
+    public TransitionServer(int port, TransitionSink replayBuffer, ReplayScheduler scheduler, int height, int width,
+                            int actionCount) throws IOException {
+        this.replayBuffer = replayBuffer;
+        this.scheduler = scheduler;
+        this.height = height;
+        this.width = width;
+        this.actionCount = actionCount;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        connections = new CopyOnWriteArrayList<>();
+        nextEnvId = new AtomicInteger();
+        steps = new AtomicLong();
+
+        acceptThread = new Thread(this::accept, "transition-server");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        broadcastThread = new Thread(this::sendParameters, "parameter-broadcast");
+        broadcastThread.setDaemon(true);
+        broadcastThread.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of steps received from all actors.
+     *
+     * @return the number of steps received
+     */
+    public long getStepCount() {
+        return steps.get();
+    }
+
+    /**
+     * Returns the number of actors connected.
+     *
+     * @return the number of actors connected
+     */
+    public int getActorCount() {
+        return connections.size();
+    }
+
+    /**
+     * Sends the current parameters of a block to all actors. It must be called on the thread that
+     * trains the block.
+     *
+     * @param block the block to send the parameters of
+     */
+    public void broadcast(Block block) {
+        float[][] values = ParameterUtil.toArrays(block);
+        synchronized (this) {
+            version++;
+            parameters = Protocol.encodeParameters(version, values);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops listening and closes the connections of all actors, which makes them stop.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the server socket", e);
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void accept() {
+        int actorId = 0;
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(actorId++, socket);
+                Thread thread = new Thread(connection::read, "transition-reader-" + connection.actorId);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Failed to accept an actor", e);
+                }
+            }
+        }
+    }
+
+    private void sendParameters() {
+        long sent = 0;
+        while (!closed) {
+            byte[] message;
+            long messageVersion;
+            synchronized (this) {
+                while (!closed && version == sent && !anyBehind()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                message = parameters;
+                messageVersion = version;
+            }
+            if (message == null) {
+                sent = messageVersion;
+                continue;
+            }
+            for (Connection connection : connections) {
+                if (connection.sentVersion < messageVersion) {
+                    connection.send(message, messageVersion);
+                }
+            }
+            sent = messageVersion;
+        }
+    }
+
+    private boolean anyBehind() {
+        for (Connection connection : connections) {
+            if (parameters != null && connection.sentVersion < version) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The connection of an actor.
+     */
+    private final class Connection {
+        private final int actorId;
+        private final Socket socket;
+        private final Map<Integer, Integer> envIds;
+        private volatile long sentVersion;
+        private DataOutputStream out;
+
+        Connection(int actorId, Socket socket) {
+            this.actorId = actorId;
+            this.socket = socket;
+            this.envIds = new HashMap<>();
+        }
+
+        void read() {
+            int frameSize = height * width;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+                Protocol.readHello(in, height, width, actionCount);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                connections.add(this);
+                logger.info("Actor {} connected from {}", actorId, socket.getRemoteSocketAddress());
+                synchronized (TransitionServer.this) {
+                    TransitionServer.this.notifyAll();
+                }
+
+                while (!closed) {
+                    // a reader waiting for the trainer leaves the steps in the socket, so the actor
+                    // waits too once its buffers are full
+                    if (scheduler != null && !scheduler.awaitGameSteps()) {
+                        break;
+                    }
+                    TransitionStep step = Protocol.readStep(in, frameSize);
+                    Integer envId = envIds.get(step.getEnvId());
+                    if (envId == null) {
+                        if (!step.isEpisodeStart()) {
+                            // the frames before are unknown, wait for the next episode
+                            continue;
+                        }
+                        envId = nextEnvId.getAndIncrement();
+                        envIds.put(step.getEnvId(), envId);
+                    }
+                    replayBuffer.addTransition(step.withEnvId(envId));
+                    steps.incrementAndGet();
+                    Metrics.ENV_STEPS.increment();
+                    if (scheduler != null) {
+                        scheduler.addGameSteps(1);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (EOFException e) {
+                logger.info("Actor {} disconnected", actorId);
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Lost actor " + actorId, e);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        void send(byte[] message, long messageVersion) {
+            try {
+                out.write(message);
+                out.flush();
+                sentVersion = messageVersion;
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Failed to send the parameters to actor " + actorId, e);
+                }
+                close();
+            }
+        }
+
+        void close() {
+            if (connections.remove(this) && connections.isEmpty() && !closed && scheduler != null) {
+                // nothing is left to play the steps the trainer waits for
+                logger.info("Lost the last actor, stopping");
+                scheduler.shutdown();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the connection of actor " + actorId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.kingyu.rlbird.rl.remote;
+
+import com.kingyu.rlbird.rl.env.Transition;
+
+/**
+ * A step received from an actor. It only carries the frames and the primitive values a replay
+ * buffer stores, not the observations.
+ */
+final class TransitionStep implements Transition {
+
+    private final int envId;
+    private final boolean episodeStart;
+    private final byte[] preFrame;
+    private final byte[] postFrame;
+    private final int actionIndex;
+    private final float reward;
+    private final boolean terminal;
+
+    TransitionStep(int envId, boolean episodeStart, byte[] preFrame, byte[] postFrame, int actionIndex,
+                   float reward, boolean terminal) {
+        this.envId = envId;
+        this.episodeStart = episodeStart;
+        this.preFrame = preFrame;
+        this.postFrame = postFrame;
+        this.actionIndex = actionIndex;
+        this.reward = reward;
+        this.terminal = terminal;
+    }
+
+    /**
+     * Returns the same step taken in another environment.
+     *
+     * @param envId the id of the environment
+     * @return the step
+     */
+    TransitionStep withEnvId(int envId) {
+        return new TransitionStep(envId, episodeStart, preFrame, postFrame, actionIndex, reward, terminal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEnvId() {
+        return envId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEpisodeStart() {
+        return episodeStart;
+    }
+
+    /**
+     * Returns the frame before the action, which is only sent when the step starts an episode.
+     *
+     * @return the grayscale pixels of the frame, null unless the step starts an episode
+     */
+    @Override
+    public byte[] getPreFrame() {
+        return preFrame;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getPostFrame() {
+        return postFrame;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getActionIndex() {
+        return actionIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float getRewardValue() {
+        return reward;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTerminal() {
+        return terminal;
+    }
+}
@@ -5,8 +5,26 @@ import org.apache.commons.cli.*;
 public class Arguments {
 
     private final int batchSize;
+    private final int envs;
+    private final int actors;
+    private final int actionRepeat;
+    private final int episodeCap;
+    private final int nativeBudget;
+    private final float replayRatio;
+    private final Integer evaluate;
+    private final Integer learnerPort;
+    private final String join;
+    private final String eventLog;
+    private final String recordEpisodes;
+    private final String replayFile;
+    private final Long seed;
+    private final String metrics;
+    private final String offline;
+    private final String recordTransitions;
     private final boolean graphics;
+    private final boolean maxPool;
     private final boolean preTrained;
+    private final boolean prioritized;
     private final boolean testing;
 
     public Arguments(CommandLine cmd) {
@@ -18,8 +36,80 @@ public class Arguments {
             batchSize = 32;
         }
 
+        if (cmd.hasOption("envs")) {
+            envs = Integer.parseInt(cmd.getOptionValue("envs"));
+        } else {
+            envs = 1;
+        }
+
+        if (cmd.hasOption("action-repeat")) {
+            actionRepeat = Integer.parseInt(cmd.getOptionValue("action-repeat"));
+        } else {
+            actionRepeat = 1;
+        }
+
+        maxPool = cmd.hasOption("max-pool");
+
+        if (cmd.hasOption("actors")) {
+            actors = Integer.parseInt(cmd.getOptionValue("actors"));
+        } else {
+            actors = 0;
+        }
+
+        if (cmd.hasOption("learner")) {
+            learnerPort = Integer.parseInt(cmd.getOptionValue("learner"));
+        } else {
+            learnerPort = null;
+        }
+
+        join = cmd.getOptionValue("join");
+
+        if (cmd.hasOption("episode-cap")) {
+            episodeCap = Integer.parseInt(cmd.getOptionValue("episode-cap"));
+        } else {
+            episodeCap = 10000;
+        }
+
+        if (cmd.hasOption("replay-ratio")) {
+            replayRatio = Float.parseFloat(cmd.getOptionValue("replay-ratio"));
+        } else {
+            replayRatio = 0.25f;
+        }
+
+        if (cmd.hasOption("native-budget")) {
+            nativeBudget = Integer.parseInt(cmd.getOptionValue("native-budget"));
+        } else {
+            nativeBudget = 0;
+        }
+
+        if (cmd.hasOption("evaluate")) {
+            evaluate = Integer.parseInt(cmd.getOptionValue("evaluate"));
+        } else {
+            evaluate = null;
+        }
+
+        eventLog = cmd.getOptionValue("event-log");
+
+        metrics = cmd.getOptionValue("metrics");
+
+        offline = cmd.getOptionValue("offline");
+
+        recordTransitions = cmd.getOptionValue("record-transitions");
+
+        recordEpisodes = cmd.getOptionValue("record-episodes");
+
+        replayFile = cmd.getOptionValue("replay-file");
+
+        if (cmd.hasOption("seed")) {
+            seed = Long.parseLong(cmd.getOptionValue("seed"));
+        } else {
+            seed = null;
+        }
+
         preTrained = cmd.hasOption("pre-trained");
 
+        prioritized = cmd.hasOption("prioritized");
+
         testing = cmd.hasOption("testing");
     }
 
@@ -38,6 +128,13 @@ public class Arguments {
                         .argName("GRAPHICS")
                         .desc("Training with graphics")
                         .build());
+        options.addOption(
+                Option.builder("a")
+                        .longOpt("actors")
+                        .hasArg()
+                        .argName("ACTORS")
+                        .desc("The number of actor processes to start and learn from.")
+                        .build());
         options.addOption(
                 Option.builder("b")
                         .longOpt("batch-size")
@@ -45,18 +142,135 @@ public class Arguments {
                         .argName("BATCH-SIZE")
                         .desc("The batch size of the training data.")
                         .build());
+        options.addOption(
+                Option.builder("c")
+                        .longOpt("record-episodes")
+                        .hasArg()
+                        .argName("RECORD-EPISODES")
+                        .desc("The file to record the episodes played in.")
+                        .build());
+        options.addOption(
+                Option.builder("d")
+                        .longOpt("replay-file")
+                        .hasArg()
+                        .argName("REPLAY-FILE")
+                        .desc("The file to save the replay buffer to, and restore it from at start.")
+                        .build());
+        options.addOption(
+                Option.builder("e")
+                        .longOpt("envs")
+                        .hasArg()
+                        .argName("ENVS")
+                        .desc("The number of environments to collect experience from.")
+                        .build());
+        options.addOption(
+                Option.builder("j")
+                        .longOpt("join")
+                        .hasArg()
+                        .argName("JOIN")
+                        .desc("Run as an actor of the learner at HOST:PORT.")
+                        .build());
+        options.addOption(
+                Option.builder("k")
+                        .longOpt("action-repeat")
+                        .hasArg()
+                        .argName("ACTION-REPEAT")
+                        .desc("The number of frames each action is played for.")
+                        .build());
+        options.addOption(
+                Option.builder("l")
+                        .longOpt("event-log")
+                        .hasArg()
+                        .argName("EVENT-LOG")
+                        .desc("The file to record the binary event log in.")
+                        .build());
+        options.addOption(
+                Option.builder("m")
+                        .longOpt("metrics")
+                        .hasArg()
+                        .argName("METRICS")
+                        .desc("The CSV file to append the metric snapshots to.")
+                        .build());
+        options.addOption(
+                Option.builder("n")
+                        .longOpt("learner")
+                        .hasArg()
+                        .argName("LEARNER")
+                        .desc("Run as a learner, taking the steps of actors on the port.")
+                        .build());
+        options.addOption(
+                Option.builder("o")
+                        .longOpt("offline")
+                        .hasArg()
+                        .argName("OFFLINE")
+                        .desc("Train offline on the recorded transition files, separated by commas.")
+                        .build());
         options.addOption(
                 Option.builder("p")
                         .longOpt("pre-trained")
                         .argName("PRE-TRAINED")
                         .desc("Use pre-trained weights")
                         .build());
+        options.addOption(
+                Option.builder("q")
+                        .longOpt("native-budget")
+                        .hasArg()
+                        .argName("NATIVE-BUDGET")
+                        .desc("The megabytes of native memory the arrays kept across steps may take, 0 for no limit.")
+                        .build());
+        options.addOption(
+                Option.builder("r")
+                        .longOpt("prioritized")
+                        .argName("PRIORITIZED")
+                        .desc("Sample the replay buffer by priority")
+                        .build());
+        options.addOption(
+                Option.builder("s")
+                        .longOpt("seed")
+                        .hasArg()
+                        .argName("SEED")
+                        .desc("The seed of the random number generators.")
+                        .build());
         options.addOption(
                 Option.builder("t")
                         .longOpt("testing")
                         .argName("TESTING")
                         .desc("test the trained model")
                         .build());
+        options.addOption(
+                Option.builder("u")
+                        .longOpt("episode-cap")
+                        .hasArg()
+                        .argName("EPISODE-CAP")
+                        .desc("The number of steps an evaluated episode is cut at, 10000 by default, 0 for no cap.")
+                        .build());
+        options.addOption(
+                Option.builder("v")
+                        .longOpt("evaluate")
+                        .hasArg()
+                        .argName("EVALUATE")
+                        .desc("Evaluate every checkpoint on the number of episodes.")
+                        .build());
+        options.addOption(
+                Option.builder("w")
+                        .longOpt("record-transitions")
+                        .hasArg()
+                        .argName("RECORD-TRANSITIONS")
+                        .desc("The file to append the transitions played to.")
+                        .build());
+        options.addOption(
+                Option.builder("x")
+                        .longOpt("max-pool")
+                        .argName("MAX-POOL")
+                        .desc("Observe the maximum of the last two frames of an action")
+                        .build());
+        options.addOption(
+                Option.builder("y")
+                        .longOpt("replay-ratio")
+                        .hasArg()
+                        .argName("REPLAY-RATIO")
+                        .desc("The number of training steps per game step, 0 to train as fast as possible.")
+                        .build());
         return options;
     }
 
@@ -68,10 +282,82 @@ public class Arguments {
         return batchSize;
     }
 
+    public int getEnvs() {
+        return envs;
+    }
+
+    public int getActionRepeat() {
+        return actionRepeat;
+    }
+
+    public boolean useMaxPool() {
+        return maxPool;
+    }
+
+    public int getEpisodeCap() {
+        return episodeCap;
+    }
+
+    public float getReplayRatio() {
+        return replayRatio;
+    }
+
+    public int getNativeBudget() {
+        return nativeBudget;
+    }
+
+    public Integer getEvaluate() {
+        return evaluate;
+    }
+
+    public int getActors() {
+        return actors;
+    }
+
+    public Integer getLearnerPort() {
+        return learnerPort;
+    }
+
+    public String getJoin() {
+        return join;
+    }
+
+    public String getEventLog() {
+        return eventLog;
+    }
+
+    public String getMetrics() {
+        return metrics;
+    }
+
+    public String getRecordEpisodes() {
+        return recordEpisodes;
+    }
+
+    public String getReplayFile() {
+        return replayFile;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public String getOffline() {
+        return offline;
+    }
+
+    public String getRecordTransitions() {
+        return recordTransitions;
+    }
+
     public boolean usePreTrained() {
         return preTrained;
     }
 
+    public boolean usePrioritized() {
+        return prioritized;
+    }
+
     public boolean isTesting(){
         return testing;
     }
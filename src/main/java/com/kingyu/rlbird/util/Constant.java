@@ -1,7 +1,5 @@
 package com.kingyu.rlbird.util;
 
-import java.awt.Color;
-
 /**
  * 常量类
  *
@@ -13,6 +11,10 @@ public class Constant {
     public static final int FRAME_WIDTH = 288;
     public static final int FRAME_HEIGHT = 512;
 
+    // 观察图像尺寸，即神经网络输入的尺寸
+    public static final int OBSERVATION_WIDTH = 80;
+    public static final int OBSERVATION_HEIGHT = 80;
+
     // 游戏标题
     public static final String GAME_TITLE = "RL Flappy Bird written by Kingyu";
 
@@ -24,7 +26,7 @@ public class Constant {
     public static final int GAME_SPEED = 6;
 
     // 游戏背景色
-    public static final Color BG_COLOR = new Color(0x000000);
+    public static final int BG_COLOR = 0x000000;
 
     // 游戏刷新率
     public static final int FPS = 1000 / 30;
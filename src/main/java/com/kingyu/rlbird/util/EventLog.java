@@ -0,0 +1,317 @@
+package com.kingyu.rlbird.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A structured event channel for the hot paths of the game and the agents, in place of building a
+ * log line for every step.
+ *
+ * <p>Each event is a fixed-size binary record written into a preallocated ring buffer, without
+ * allocating. A background thread writes the ring to a file, which {@link EventLogDecoder} turns
+ * back into text, and logs a short human-readable summary of the events every few seconds.
+ * Events are dropped, and counted, when the file falls a whole ring behind. Until
+ * {@link #start(Path)} is called, events are ignored.
+ *
+ * <p>Recording takes no lock, so the threads stepping the environments, choosing the actions and
+ * training never wait for each other: a thread claims the next record of the ring by advancing its
+ * write count, fills it and publishes it with the sequence number of the record, and the
+ * background thread only writes the records published without a gap. The summary is counted in
+ * adders.
+ *
+ * <p>A record is {@value #RECORD_SIZE} bytes, little-endian: the time in nanoseconds (long), the
+ * type (byte), the flags (byte), the environment (short), the step (int), an integer value (int)
+ * and three float values.
+ *
+ * @author Kingyu
+ */
+public final class EventLog {
+    private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+
+    public static final int RECORD_SIZE = 32;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /** A step of an environment: the game step, the action index, the reward and the score. */
+    public static final byte STEP = 1;
+    /** An action chosen: the action index and the Q-values of the two actions, if any. */
+    public static final byte ACTION = 2;
+    /** A batch trained on: the train step. */
+    public static final byte TRAIN = 3;
+
+    /** Set on a {@link #STEP} which ended the episode. */
+    public static final byte TERMINAL = 1;
+    /** Set on an {@link #ACTION} chosen at random. */
+    public static final byte RANDOM = 2;
+
+    private static final int RING_RECORDS = 1 << 16;
+    private static final long FLUSH_MILLIS = 200;
+    private static final long SUMMARY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static volatile EventLog instance;
+
+    private final ByteBuffer ring;
+    private final FileChannel channel;
+    private final Thread flusher;
+    private volatile boolean running = true;
+    // the records claimed, and for each slot of the ring the sequence number of its record plus one once published
+    private final AtomicLong written;
+    private final AtomicLongArray published;
+    private volatile long flushed;
+    private final LongAdder dropped;
+
+    // what the summary is made of, since the last summary
+    private long lastSummary;
+    private volatile int lastGameStep;
+    private volatile int lastTrainStep;
+    private final LongAdder steps;
+    private final LongAdder episodes;
+    private final LongAdder scoreSum;
+    private final LongAccumulator maxScore;
+    private final LongAdder actions;
+    private final LongAdder randomActions;
+    private final DoubleAdder qSum;
+
+    private EventLog(FileChannel channel) {
+        this.channel = channel;
+        ring = ByteBuffer.allocateDirect(RING_RECORDS * RECORD_SIZE).order(BYTE_ORDER);
+        written = new AtomicLong();
+        published = new AtomicLongArray(RING_RECORDS);
+        dropped = new LongAdder();
+        lastSummary = System.nanoTime();
+        steps = new LongAdder();
+        episodes = new LongAdder();
+        scoreSum = new LongAdder();
+        maxScore = new LongAccumulator(Math::max, 0);
+        actions = new LongAdder();
+        randomActions = new LongAdder();
+        qSum = new DoubleAdder();
+        flusher = new Thread(this::run, "event-log");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Starts recording the events.
+     *
+     * @param file the file to write the events to, or null to only log the summaries
+     * @throws IOException if the file cannot be created
+     */
+    public static synchronized void start(Path file) throws IOException {
+        if (instance != null) {
+            throw new IllegalStateException("The event log is already started");
+        }
+        FileChannel channel = null;
+        if (file != null) {
+            if (file.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        EventLog eventLog = new EventLog(channel);
+        eventLog.flusher.start();
+        instance = eventLog;
+    }
+
+    /**
+     * Writes the remaining events and stops recording.
+     */
+    public static synchronized void stop() {
+        EventLog eventLog = instance;
+        if (eventLog == null) {
+            return;
+        }
+        instance = null;
+        // not interrupted, which would close the file channel
+        eventLog.running = false;
+        try {
+            eventLog.flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records a step of an environment.
+     *
+     * @param env         the id of the environment
+     * @param gameStep    the game step
+     * @param actionIndex the index of the action taken
+     * @param reward      the reward given
+     * @param score       the score of the episode so far
+     * @param terminal    whether the step ended the episode
+     */
+    public static void step(int env, int gameStep, int actionIndex, float reward, long score, boolean terminal) {
+        EventLog eventLog = instance;
+        if (eventLog != null) {
+            eventLog.record(STEP, terminal ? TERMINAL : 0, env, gameStep, actionIndex, reward, score, 0);
+        }
+    }
+
+    /**
+     * Records an action chosen by an agent.
+     *
+     * @param env         the index of the environment in its batch
+     * @param actionIndex the index of the action chosen
+     * @param random      whether the action was chosen at random
+     * @param q0          the Q-value of the first action, 0 if random
+     * @param q1          the Q-value of the second action, 0 if random
+     */
+    public static void action(int env, int actionIndex, boolean random, float q0, float q1) {
+        EventLog eventLog = instance;
+        if (eventLog != null) {
+            eventLog.record(ACTION, random ? RANDOM : 0, env, 0, actionIndex, q0, q1, 0);
+        }
+    }
+
+    /**
+     * Records a batch trained on.
+     *
+     * @param trainStep the train step
+     */
+    public static void train(int trainStep) {
+        EventLog eventLog = instance;
+        if (eventLog != null) {
+            eventLog.record(TRAIN, (byte) 0, 0, trainStep, 0, 0, 0, 0);
+        }
+    }
+
+    private void record(byte type, byte flags, int env, int step, int value, float v0, float v1, float v2) {
+        summarize(type, flags, step, value, v0, v1);
+        if (channel == null) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = written.get();
+            // flushed only grows, so a record is never claimed over one not written to the file yet
+            if (sequence - flushed >= RING_RECORDS) {
+                dropped.increment();
+                return;
+            }
+        } while (!written.compareAndSet(sequence, sequence + 1));
+        int slot = (int) (sequence % RING_RECORDS);
+        int offset = slot * RECORD_SIZE;
+        ring.putLong(offset, System.nanoTime());
+        ring.put(offset + 8, type);
+        ring.put(offset + 9, flags);
+        ring.putShort(offset + 10, (short) env);
+        ring.putInt(offset + 12, step);
+        ring.putInt(offset + 16, value);
+        ring.putFloat(offset + 20, v0);
+        ring.putFloat(offset + 24, v1);
+        ring.putFloat(offset + 28, v2);
+        published.set(slot, sequence + 1);
+    }
+
+    private void summarize(byte type, byte flags, int step, int value, float v0, float v1) {
+        switch (type) {
+            case STEP:
+                steps.increment();
+                lastGameStep = step;
+                if ((flags & TERMINAL) != 0) {
+                    episodes.increment();
+                    scoreSum.add((long) v1);
+                    maxScore.accumulate((long) v1);
+                }
+                break;
+            case ACTION:
+                actions.increment();
+                if ((flags & RANDOM) != 0) {
+                    randomActions.increment();
+                } else {
+                    qSum.add(value == 0 ? v0 : v1);
+                }
+                break;
+            case TRAIN:
+                lastTrainStep = step;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + type);
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                Thread.sleep(FLUSH_MILLIS);
+                flush();
+                logSummary(false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flush();
+            logSummary(true);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.error("Failed to close the event log", e);
+                }
+            }
+        }
+    }
+
+    private void flush() {
+        if (channel == null) {
+            return;
+        }
+        long from = flushed;
+        long to = from;
+        // up to the first record claimed but not published yet
+        while (to - from < RING_RECORDS && published.get((int) (to % RING_RECORDS)) == to + 1) {
+            to++;
+        }
+        // the records between from and to are not overwritten until flushed moves
+        try {
+            while (from < to) {
+                int start = (int) (from % RING_RECORDS);
+                int end = (int) Math.min(RING_RECORDS, start + (to - from));
+                ByteBuffer slice = ring.duplicate();
+                slice.limit(end * RECORD_SIZE).position(start * RECORD_SIZE);
+                while (slice.hasRemaining()) {
+                    channel.write(slice);
+                }
+                from += end - start;
+            }
+        } catch (IOException e) {
+            logger.error("Failed to write the event log", e);
+        }
+        flushed = to;
+    }
+
+    // only called by the background thread
+    private void logSummary(boolean last) {
+        long now = System.nanoTime();
+        if (!last && now - lastSummary < SUMMARY_NANOS) {
+            return;
+        }
+        double seconds = (now - lastSummary) / 1e9;
+        long episodeCount = episodes.sumThenReset();
+        long scores = scoreSum.sumThenReset();
+        long actionCount = actions.sumThenReset();
+        long randomCount = randomActions.sumThenReset();
+        long greedyActions = actionCount - randomCount;
+        double q = qSum.sumThenReset();
+        logger.info(String.format("GAME_STEP %d / TRAIN_STEP %d / %.1f steps/s / %d episodes, mean score %.2f, "
+                        + "max score %d / %d actions, %d random, mean Q %.4f / %d events dropped",
+                lastGameStep, lastTrainStep, steps.sumThenReset() / seconds, episodeCount,
+                episodeCount == 0 ? 0 : (double) scores / episodeCount, maxScore.getThenReset(),
+                actionCount, randomCount, greedyActions == 0 ? 0 : q / greedyActions, dropped.sum()));
+        lastSummary = now;
+    }
+}
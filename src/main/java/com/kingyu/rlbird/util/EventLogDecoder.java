@@ -0,0 +1,84 @@
+package com.kingyu.rlbird.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Turns a file written by {@link EventLog} back into text, one line per event.
+ *
+ * <p>Usage: {@code EventLogDecoder <event log file>}
+ *
+ * @author Kingyu
+ */
+public final class EventLogDecoder {
+
+    private EventLogDecoder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: EventLogDecoder <event log file>");
+            System.exit(1);
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+        decode(Paths.get(args[0]), out);
+        out.flush();
+    }
+
+    /**
+     * Writes the events of a file as text.
+     *
+     * @param file the file written by {@link EventLog}
+     * @param out  the stream to write the text to
+     * @throws IOException if the file cannot be read
+     */
+    public static void decode(Path file, PrintStream out) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(EventLog.RECORD_SIZE).order(EventLog.BYTE_ORDER);
+        long firstTime = -1;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(record) >= 0) {
+                if (record.hasRemaining()) {
+                    continue;
+                }
+                record.flip();
+                long time = record.getLong();
+                byte type = record.get();
+                byte flags = record.get();
+                short env = record.getShort();
+                int step = record.getInt();
+                int value = record.getInt();
+                float v0 = record.getFloat();
+                float v1 = record.getFloat();
+                record.getFloat();
+                record.clear();
+                if (firstTime < 0) {
+                    firstTime = time;
+                }
+                out.print(String.format("%.6f ", (time - firstTime) / 1e9));
+                out.println(format(type, flags, env, step, value, v0, v1));
+            }
+        }
+    }
+
+    private static String format(byte type, byte flags, short env, int step, int value, float v0, float v1) {
+        switch (type) {
+            case EventLog.STEP:
+                return "STEP env " + env + " / GAME_STEP " + step + " / ACTION " + value + " / REWARD " + v0
+                        + " / SCORE " + (long) v1 + ((flags & EventLog.TERMINAL) != 0 ? " / TERMINAL" : "");
+            case EventLog.ACTION:
+                return (flags & EventLog.RANDOM) != 0
+                        ? "ACTION env " + env + " / " + value + " RANDOM"
+                        : "ACTION env " + env + " / " + value + " / Q [" + v0 + ", " + v1 + "]";
+            case EventLog.TRAIN:
+                return "TRAIN / TRAIN_STEP " + step;
+            default:
+                return "UNKNOWN type " + type;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import ai.djl.ndarray.NDManager;
 import java.awt.image.BufferedImage;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.SplittableRandom;
 
 import javax.imageio.ImageIO;
 
@@ -38,26 +39,33 @@ public class GameUtil {
     }
 
     /**
-     * 返回指定区间的一个随机数
+     * 用指定的随机数生成器返回指定区间的一个随机数，种子相同则结果相同
      *
-     * @param min 区间最小值，包含
-     * @param max 区间最大值，不包含
+     * @param random 随机数生成器
+     * @param min    区间最小值，包含
+     * @param max    区间最大值，不包含
      * @return 该区间的随机数
      */
-    public static int getRandomNumber(int min, int max) {
-        return (int) (Math.random() * (max - min) + min);
+    public static int getRandomNumber(SplittableRandom random, int min, int max) {
+        return random.nextInt(min, max);
     }
 
     /**
-     * Image preprocess
+     * Image preprocess. The intermediate arrays are freed before returning, only the result is left
+     * in the manager.
      *
      * @param observation input BufferedImage
+     * @param manager     the manager to create the result in
      * @return NDArray:Shape(80,80,1)
      */
-    public static NDArray imgPreprocess(BufferedImage observation) {
-        return NDImageUtils.toTensor(
-                NDImageUtils.resize(
-                        ImageFactory.getInstance().fromImage(observation).toNDArray(NDManager.newBaseManager(), Image.Flag.GRAYSCALE)
-                        ,80,80));
+    public static NDArray imgPreprocess(BufferedImage observation, NDManager manager) {
+        try (NDManager scope = manager.newSubManager()) {
+            NDArray tensor = NDImageUtils.toTensor(
+                    NDImageUtils.resize(
+                            ImageFactory.getInstance().fromImage(observation).toNDArray(scope, Image.Flag.GRAYSCALE)
+                            , 80, 80));
+            tensor.attach(manager);
+            return tensor;
+        }
     }
 }
\ No newline at end of file
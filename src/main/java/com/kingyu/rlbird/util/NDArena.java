@@ -0,0 +1,137 @@
+package com.kingyu.rlbird.util;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A pool of engine arrays of fixed shapes, all freed together when the arena is closed.
+ *
+ * <p>An array released to the arena is handed out again by the next {@link #acquire(Shape, DataType)}
+ * of the same shape and type, instead of creating one, so that an owner filling the same array
+ * every step allocates nothing once warmed up. The arrays live in a manager of their own and are
+ * counted by {@link NativeMemory} under the site of the arena, and the arrays still acquired when it
+ * is closed are reported as leaks.
+ *
+ * @author Kingyu
+ */
+public final class NDArena implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NDArena.class);
+
+    private final NDManager manager;
+    private final String site;
+    private final Map<String, Deque<NDArray>> released;
+    private final Map<NDArray, String> acquired;
+    private boolean closed;
+
+    /**
+     * Constructs a {@link NDArena}.
+     *
+     * @param parent the manager to create the manager of the arena from
+     * @param site   the name the arrays are counted under
+     */
+    public NDArena(NDManager parent, String site) {
+        this.manager = parent.newSubManager();
+        this.site = site;
+        this.released = new HashMap<>();
+        this.acquired = new IdentityHashMap<>();
+    }
+
+    /**
+     * Takes an array out of the arena, created if none of the shape and type was released. The
+     * contents of a reused array are those it was released with.
+     *
+     * @param shape    the shape of the array
+     * @param dataType the type of the array
+     * @return the array, to release once done with
+     * @throws IllegalStateException if the arena is closed, or the array goes over the budget of
+     *                               {@link NativeMemory}
+     */
+    public synchronized NDArray acquire(Shape shape, DataType dataType) {
+        if (closed) {
+            throw new IllegalStateException("The arena of " + site + " is closed");
+        }
+        String key = key(shape, dataType);
+        Deque<NDArray> pool = released.get(key);
+        NDArray array = pool == null ? null : pool.poll();
+        if (array == null) {
+            NativeMemory.allocate(site, size(shape, dataType));
+            array = manager.create(shape, dataType);
+        }
+        acquired.put(array, key);
+        return array;
+    }
+
+    /**
+     * Gives an array back to the arena, for the next {@link #acquire(Shape, DataType)} of its shape
+     * and type.
+     *
+     * @param array an array acquired from this arena
+     * @throws IllegalArgumentException if the array was not acquired from this arena
+     */
+    public synchronized void release(NDArray array) {
+        String key = acquired.remove(array);
+        if (key == null) {
+            throw new IllegalArgumentException("The array was not acquired from the arena of " + site);
+        }
+        if (closed) {
+            return;
+        }
+        released.computeIfAbsent(key, k -> new ArrayDeque<>()).push(array);
+    }
+
+    /**
+     * Returns the number of arrays acquired and not released.
+     *
+     * @return the number of arrays in use
+     */
+    public synchronized int getAcquired() {
+        return acquired.size();
+    }
+
+    /**
+     * Frees every array of the arena, logging the ones still acquired as leaks.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!acquired.isEmpty()) {
+            Map<String, Integer> leaks = new HashMap<>();
+            for (String key : acquired.values()) {
+                leaks.merge(key, 1, Integer::sum);
+            }
+            logger.warn("The arena of {} is closed with arrays never released: {}", site, leaks);
+        }
+        for (Deque<NDArray> pool : released.values()) {
+            for (NDArray array : pool) {
+                NativeMemory.free(site, size(array.getShape(), array.getDataType()));
+            }
+        }
+        for (NDArray array : acquired.keySet()) {
+            NativeMemory.free(site, size(array.getShape(), array.getDataType()));
+        }
+        released.clear();
+        manager.close();
+    }
+
+    private static String key(Shape shape, DataType dataType) {
+        return dataType + shape.toString();
+    }
+
+    private static long size(Shape shape, DataType dataType) {
+        return shape.size() * dataType.getNumOfBytes();
+    }
+}
@@ -0,0 +1,128 @@
+package com.kingyu.rlbird.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts for the engine arrays that outlive a single step, by the site that holds them.
+ *
+ * <p>The arrays are allocated outside the Java heap, so nothing in the JVM limits them, and an
+ * array that is never closed only shows as a process that keeps growing. Every long-lived array is
+ * counted here when created and uncounted when closed, by an {@link NDArena} or by its owner, so
+ * that the live bytes of each site can be reported, and a run that goes over its budget fails with
+ * the report instead of being killed by the system.
+ *
+ * @author Kingyu
+ */
+public final class NativeMemory {
+
+    private static final long MB = 1024 * 1024;
+
+    private static final Map<String, Site> sites = new ConcurrentHashMap<>();
+    private static final AtomicLong live = new AtomicLong();
+    private static final AtomicLong peak = new AtomicLong();
+    private static volatile long budget;
+
+    private NativeMemory() {
+    }
+
+    /**
+     * Sets the number of bytes the counted arrays may take together.
+     *
+     * @param budget the budget in bytes, 0 for no budget
+     */
+    public static void setBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Invalid native memory budget " + budget);
+        }
+        NativeMemory.budget = budget;
+    }
+
+    /**
+     * Counts an array created for a site.
+     *
+     * @param site  the name of what holds the array
+     * @param bytes the size of the array
+     * @throws IllegalStateException if the counted arrays go over the budget, in which case the
+     *                               array is not counted
+     */
+    public static void allocate(String site, long bytes) {
+        long total = live.addAndGet(bytes);
+        if (budget > 0 && total > budget) {
+            live.addAndGet(-bytes);
+            throw new IllegalStateException("Allocating " + bytes + " bytes for " + site
+                    + " goes over the native memory budget of " + budget / MB + " MB\n" + report());
+        }
+        peak.accumulateAndGet(total, Math::max);
+        sites.computeIfAbsent(site, Site::new).allocate(bytes);
+    }
+
+    /**
+     * Uncounts an array of a site once closed.
+     *
+     * @param site  the name of what held the array
+     * @param bytes the size of the array
+     */
+    public static void free(String site, long bytes) {
+        live.addAndGet(-bytes);
+        sites.computeIfAbsent(site, Site::new).free(bytes);
+    }
+
+    /**
+     * Returns the bytes of the counted arrays not closed yet.
+     *
+     * @return the live bytes
+     */
+    public static long getLive() {
+        return live.get();
+    }
+
+    /**
+     * Returns the highest number of live bytes so far.
+     *
+     * @return the peak live bytes
+     */
+    public static long getPeak() {
+        return peak.get();
+    }
+
+    /**
+     * Describes the live arrays of every site, the sites still holding arrays once a run is done
+     * being the ones that leak.
+     *
+     * @return the report, one line per site
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder(String.format("native memory: %.1f MB live, %.1f MB peak",
+                (double) live.get() / MB, (double) peak.get() / MB));
+        for (Site site : new TreeMap<>(sites).values()) {
+            report.append(String.format("%n  %-24s %8d live %10.1f MB live %10d allocated",
+                    site.name, site.liveCount.get(), (double) site.liveBytes.get() / MB, site.allocated.get()));
+        }
+        return report.toString();
+    }
+
+    private static final class Site {
+        private final String name;
+        private final AtomicLong liveCount = new AtomicLong();
+        private final AtomicLong liveBytes = new AtomicLong();
+        private final AtomicLong allocated = new AtomicLong();
+
+        private Site(String name) {
+            this.name = name;
+        }
+
+        private void allocate(long bytes) {
+            liveCount.incrementAndGet();
+            liveBytes.addAndGet(bytes);
+            allocated.incrementAndGet();
+        }
+
+        private void free(long bytes) {
+            liveCount.decrementAndGet();
+            liveBytes.addAndGet(-bytes);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.kingyu.rlbird.util;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.nn.Block;
+import ai.djl.nn.Parameter;
+import ai.djl.nn.ParameterList;
+
+/**
+ * Copies parameters between blocks of the same structure, such as the network being trained and
+ * its target or snapshot copies.
+ *
+ * @author Kingyu
+ */
+public final class ParameterUtil {
+
+    private ParameterUtil() {
+    }
+
+    /**
+     * Copies the values of all parameters of a block into another block.
+     *
+     * @param source the block to copy from
+     * @param target the initialized block to copy into, built the same way as the source
+     */
+    public static void copy(Block source, Block target) {
+        ParameterList sourceParameters = source.getParameters();
+        ParameterList targetParameters = target.getParameters();
+        checkSameStructure(sourceParameters, targetParameters);
+        for (int i = 0; i < sourceParameters.size(); i++) {
+            sourceParameters.valueAt(i).getArray().copyTo(targetParameters.valueAt(i).getArray());
+        }
+    }
+
+    /**
+     * Moves the parameters of a block towards those of another block:
+     * {@code target = tau * source + (1 - tau) * target}.
+     *
+     * @param source the block to move towards
+     * @param target the initialized block to update, built the same way as the source
+     * @param tau    how far to move, 1 to copy
+     */
+    public static void blend(Block source, Block target, float tau) {
+        if (tau == 1f) {
+            copy(source, target);
+            return;
+        }
+        ParameterList sourceParameters = source.getParameters();
+        ParameterList targetParameters = target.getParameters();
+        checkSameStructure(sourceParameters, targetParameters);
+        for (int i = 0; i < sourceParameters.size(); i++) {
+            NDArray targetArray = targetParameters.valueAt(i).getArray();
+            try (NDArray scaled = sourceParameters.valueAt(i).getArray().mul(tau)) {
+                targetArray.muli(1 - tau).addi(scaled);
+            }
+        }
+    }
+
+    /**
+     * Reads the values of all parameters of a block, in the order of the block.
+     *
+     * @param block the initialized block to read
+     * @return the values of each parameter
+     */
+    public static float[][] toArrays(Block block) {
+        ParameterList parameters = block.getParameters();
+        float[][] values = new float[parameters.size()][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = parameters.valueAt(i).getArray().toFloatArray();
+        }
+        return values;
+    }
+
+    /**
+     * Sets the values of all parameters of a block, read from a block of the same structure by
+     * {@link #toArrays(Block)}.
+     *
+     * @param block  the initialized block to set
+     * @param values the values of each parameter
+     */
+    public static void set(Block block, float[][] values) {
+        ParameterList parameters = block.getParameters();
+        if (parameters.size() != values.length) {
+            throw new IllegalArgumentException("The block has " + parameters.size() + " parameters, got "
+                    + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            NDArray array = parameters.valueAt(i).getArray();
+            if (array.size() != values[i].length) {
+                throw new IllegalArgumentException("Parameter " + parameters.keyAt(i) + " has " + array.size()
+                        + " values, got " + values[i].length);
+            }
+            // set() cannot write into arrays the engine keeps in its own layout, copyTo() can
+            try (NDArray value = array.getManager().create(values[i], array.getShape())) {
+                value.copyTo(array);
+            }
+        }
+    }
+
+    private static void checkSameStructure(ParameterList source, ParameterList target) {
+        if (source.size() != target.size()) {
+            throw new IllegalArgumentException("The blocks have " + source.size() + " and " + target.size()
+                    + " parameters");
+        }
+        for (int i = 0; i < source.size(); i++) {
+            Parameter parameter = source.valueAt(i);
+            if (!source.keyAt(i).equals(target.keyAt(i))
+                    || !parameter.getArray().getShape().equals(target.valueAt(i).getArray().getShape())) {
+                throw new IllegalArgumentException("Parameter " + source.keyAt(i) + " does not match "
+                        + target.keyAt(i));
+            }
+        }
+    }
+}
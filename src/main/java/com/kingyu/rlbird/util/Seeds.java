@@ -0,0 +1,68 @@
+package com.kingyu.rlbird.util;
+
+import ai.djl.engine.Engine;
+import ai.djl.util.RandomUtils;
+
+import java.util.SplittableRandom;
+
+/**
+ * The root of the random number generators of a run.
+ *
+ * <p>Every environment, agent and replay buffer owns a {@link SplittableRandom} split from a single
+ * root when it is constructed, instead of sharing a global generator. Given the seed, and the same
+ * order of construction, each of them draws the same numbers in every run whatever the threads do.
+ * Unless {@link #init(long)} is called, the seed is drawn at random, and can be read back with
+ * {@link #getSeed()} to reproduce the run.
+ *
+ * @author Kingyu
+ */
+public final class Seeds {
+
+    private static long seed;
+    private static SplittableRandom root;
+
+    static {
+        init(new SplittableRandom().nextLong());
+    }
+
+    private Seeds() {
+    }
+
+    /**
+     * Restarts the generators from a seed, and seeds the engine and the {@link RandomUtils} of DJL
+     * with it too, for the initial weights of the networks.
+     *
+     * @param seed the seed of the run
+     */
+    public static synchronized void init(long seed) {
+        Seeds.seed = seed;
+        root = new SplittableRandom(seed);
+        RandomUtils.RANDOM.setSeed(seed);
+    }
+
+    /**
+     * Seeds the engine with the seed of the run. The engine is loaded by the first call, so it is
+     * only done when a run starts rather than by {@link #init(long)}.
+     */
+    public static synchronized void seedEngine() {
+        Engine.getInstance().setRandomSeed((int) (seed ^ (seed >>> 32)));
+    }
+
+    /**
+     * Returns the seed of the run.
+     *
+     * @return the seed of the run
+     */
+    public static synchronized long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns a new generator, independent of all the generators split before it.
+     *
+     * @return a new generator
+     */
+    public static synchronized SplittableRandom split() {
+        return root.split();
+    }
+}
@@ -0,0 +1,189 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.rl.env.Transition;
+import com.kingyu.rlbird.util.Seeds;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarReplayBufferTest {
+
+    private static final int SIDE = 4;
+    private static final int FRAME_SIZE = SIDE * SIDE;
+    private static final float DELTA = 1e-6f;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        Seeds.init(42);
+    }
+
+    @Test
+    public void nStepReturnIsTruncatedAtTheTerminalStep() {
+        int depth = 2;
+        ColumnarReplayBuffer buffer = new ColumnarReplayBuffer(4, 16, depth, SIDE, SIDE, 2, 3, 0.5f);
+        TransitionFeed feed = new TransitionFeed(0, FRAME_SIZE);
+        float[] rewards = {1, 2, 4, 8, 16};
+        for (int k = 0; k < rewards.length; k++) {
+            buffer.addTransition(feed.next(k == 0, k % 2, rewards[k], k == rewards.length - 1));
+            // a step is only stored once the 2 steps after it are added, or the episode ends
+            assertEquals(k == rewards.length - 1 ? 5 : Math.max(0, k - 1), buffer.size());
+        }
+
+        float[] expected = {
+                1 + 0.5f * 2 + 0.25f * 4,
+                2 + 0.5f * 4 + 0.25f * 8,
+                4 + 0.5f * 8 + 0.25f * 16,
+                8 + 0.5f * 16,
+                16
+        };
+        for (int k = 0; k < rewards.length; k++) {
+            ReplayStep step = buffer.getStep(k);
+            assertEquals(k, step.getId());
+            assertEquals("reward of step " + k, expected[k], step.getRewardValue(), DELTA);
+            assertEquals("terminal of step " + k, k >= 2, step.isTerminal());
+            assertEquals(k % 2, step.getActionIndex());
+            // frame 0 is the first observation, frame k + 1 the one after step k
+            assertArrayEquals(new long[]{Math.max(0, k - 1), k}, sequences(step.getPreFrames(), depth));
+            if (k < 2) {
+                assertArrayEquals(new long[]{k + 2, k + 3}, sequences(step.getPostFrames(), depth));
+            }
+        }
+    }
+
+    @Test
+    public void stepAfterTheTerminalStartsANewWindow() {
+        ColumnarReplayBuffer buffer = new ColumnarReplayBuffer(4, 16, 2, SIDE, SIDE, 2, 3, 0.5f);
+        TransitionFeed feed = new TransitionFeed(0, FRAME_SIZE);
+        buffer.addTransition(feed.next(true, 0, 1, true));
+        buffer.addTransition(feed.next(true, 1, 2, false));
+        buffer.addTransition(feed.next(false, 1, 4, false));
+        assertEquals(1, buffer.size());
+        buffer.addTransition(feed.next(false, 1, 8, false));
+
+        ReplayStep first = buffer.getStep(0);
+        assertEquals(1, first.getRewardValue(), DELTA);
+        assertTrue(first.isTerminal());
+        // the rewards of the first episode never leak into the second
+        ReplayStep second = buffer.getStep(1);
+        assertEquals(2 + 0.5f * 4 + 0.25f * 8, second.getRewardValue(), DELTA);
+        assertFalse(second.isTerminal());
+        assertArrayEquals(new long[]{2, 2}, sequences(second.getPreFrames(), 2));
+    }
+
+    @Test
+    public void stacksAreRebuiltAcrossTheFrameRingWrap() {
+        int depth = 4;
+        int capacity = 8;
+        ColumnarReplayBuffer buffer = new ColumnarReplayBuffer(4, capacity, depth, SIDE, SIDE, 2);
+        // two environments interleave their frames in the ring
+        TransitionFeed[] feeds = {new TransitionFeed(0, FRAME_SIZE), new TransitionFeed(1, FRAME_SIZE)};
+        long[][] stacks = new long[2][];
+        Map<Long, long[][]> expected = new HashMap<>();
+        long stepId = 0;
+        for (int i = 0; i < 200; i++) {
+            int env = i % 2;
+            int length = env == 0 ? 5 : 7;
+            int position = i / 2 % length;
+            Transition transition = feeds[env].next(position == 0, 0, 0, position == length - 1);
+            long post = sequenceOf(transition.getPostFrame());
+            if (transition.isEpisodeStart()) {
+                stacks[env] = new long[depth];
+                Arrays.fill(stacks[env], sequenceOf(transition.getPreFrame()));
+            }
+            long[] pre = stacks[env];
+            stacks[env] = Arrays.copyOfRange(pre, 1, depth + 1);
+            stacks[env][depth - 1] = post;
+            expected.put(stepId++, new long[][]{pre, stacks[env]});
+            buffer.addTransition(transition);
+        }
+        int frameCapacity = capacity + capacity / 4 + depth;
+        assertTrue(feeds[0].getFrameCount() + feeds[1].getFrameCount() > 5 * frameCapacity);
+
+        int complete = 0;
+        for (int index = 0; index < buffer.size(); index++) {
+            if (!buffer.isComplete(index)) {
+                continue;
+            }
+            complete++;
+            ReplayStep step = buffer.getStep(index);
+            long[][] stack = expected.get(step.getId());
+            assertArrayEquals("pre stack of step " + step.getId(), stack[0], sequences(step.getPreFrames(), depth));
+            assertArrayEquals("post stack of step " + step.getId(), stack[1], sequences(step.getPostFrames(), depth));
+        }
+        // the newest steps always have all their frames
+        assertTrue(complete >= capacity / 2);
+        assertTrue(buffer.isComplete((int) ((stepId - 1) % capacity)));
+    }
+
+    @Test
+    public void restoredBufferSamplesTheSameBatches() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("replay");
+        Seeds.init(7);
+        ColumnarReplayBuffer saved = newFilledBuffer();
+        saved.save(file);
+
+        Seeds.init(7);
+        ColumnarReplayBuffer restored = new ColumnarReplayBuffer(4, 16, 4, SIDE, SIDE, 2, 3, 0.9f);
+        restored.restore(file);
+        assertEquals(saved.size(), restored.size());
+        for (int i = 0; i < 50; i++) {
+            RlEnv.Step[] expected = saved.getBatch();
+            RlEnv.Step[] actual = restored.getBatch();
+            for (int j = 0; j < expected.length; j++) {
+                ReplayStep expectedStep = (ReplayStep) expected[j];
+                ReplayStep actualStep = (ReplayStep) actual[j];
+                assertEquals(expectedStep.getId(), actualStep.getId());
+                assertArrayEquals(expectedStep.getPreFrames(), actualStep.getPreFrames());
+                assertArrayEquals(expectedStep.getPostFrames(), actualStep.getPostFrames());
+                assertEquals(expectedStep.getActionIndex(), actualStep.getActionIndex());
+                assertEquals(expectedStep.getRewardValue(), actualStep.getRewardValue(), 0);
+                assertEquals(expectedStep.isTerminal(), actualStep.isTerminal());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restoreRejectsAnotherShape() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("replay");
+        newFilledBuffer().save(file);
+        new ColumnarReplayBuffer(4, 16, 4, SIDE, SIDE, 2, 1, 0.9f).restore(file);
+    }
+
+    // 100 steps of episodes of 9 steps in a buffer of 16, so the frame ring has wrapped
+    private static ColumnarReplayBuffer newFilledBuffer() {
+        ColumnarReplayBuffer buffer = new ColumnarReplayBuffer(4, 16, 4, SIDE, SIDE, 2, 3, 0.9f);
+        TransitionFeed feed = new TransitionFeed(0, FRAME_SIZE);
+        for (int i = 0; i < 100; i++) {
+            buffer.addTransition(feed.next(i % 9 == 0, i % 2, i, i % 9 == 8));
+        }
+        return buffer;
+    }
+
+    private static long sequenceOf(byte[] frame) {
+        return TransitionFeed.sequenceOf(frame, 0, FRAME_SIZE);
+    }
+
+    private static long[] sequences(byte[] frames, int depth) {
+        long[] sequences = new long[depth];
+        for (int i = 0; i < depth; i++) {
+            sequences[i] = TransitionFeed.sequenceOf(frames, i * FRAME_SIZE, FRAME_SIZE);
+        }
+        return sequences;
+    }
+}
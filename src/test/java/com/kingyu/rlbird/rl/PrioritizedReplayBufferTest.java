@@ -0,0 +1,152 @@
+package com.kingyu.rlbird.rl;
+
+import ai.djl.ndarray.types.Shape;
+import ai.djl.training.tracker.Tracker;
+import com.kingyu.rlbird.rl.env.RlEnv;
+import com.kingyu.rlbird.util.Seeds;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrioritizedReplayBufferTest {
+
+    private static final int BATCH_SIZE = 8;
+    private static final int CAPACITY = 16;
+    private static final int DEPTH = 2;
+    private static final int SIDE = 4;
+    private static final int FRAME_SIZE = SIDE * SIDE;
+    private static final double DELTA = 1e-4;
+
+    private TransitionFeed feed;
+
+    @Before
+    public void setUp() {
+        Seeds.init(42);
+        feed = new TransitionFeed(0, FRAME_SIZE);
+    }
+
+    @Test
+    public void newStepsAreSampledWithWeightOne() {
+        PrioritizedReplayBuffer buffer = newBuffer(1f);
+        fill(buffer, CAPACITY);
+        for (int i = 0; i < 10; i++) {
+            for (RlEnv.Step step : buffer.getBatch()) {
+                assertEquals(1, ((ReplayStep) step).getWeight(), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void samplingFrequencyTracksPriority() {
+        PrioritizedReplayBuffer buffer = newBuffer(1f);
+        fill(buffer, CAPACITY);
+        // step k gets priority k + 1, the priorities sum to 136
+        setPriorities(buffer);
+
+        int batches = 20000;
+        int[] counts = new int[CAPACITY];
+        for (int i = 0; i < batches; i++) {
+            for (RlEnv.Step step : buffer.getBatch()) {
+                counts[(int) ((ReplayStep) step).getId()]++;
+            }
+        }
+        double total = CAPACITY * (CAPACITY + 1) / 2.0;
+        for (int k = 0; k < CAPACITY; k++) {
+            assertEquals("frequency of step " + k, (k + 1) / total, counts[k] / (double) (batches * BATCH_SIZE), 0.003);
+        }
+    }
+
+    @Test
+    public void largestImportanceSamplingWeightIsOne() {
+        PrioritizedReplayBuffer buffer = newBuffer(1f);
+        fill(buffer, CAPACITY);
+        setPriorities(buffer);
+
+        double largest = 0;
+        for (int i = 0; i < 2000; i++) {
+            for (RlEnv.Step step : buffer.getBatch()) {
+                ReplayStep replayStep = (ReplayStep) step;
+                // (N * P(k))^-1 / max = p_min / p_k with beta 1
+                assertEquals(1.0 / (replayStep.getId() + 1), replayStep.getWeight(), DELTA);
+                largest = Math.max(largest, replayStep.getWeight());
+            }
+        }
+        assertEquals(1, largest, DELTA);
+    }
+
+    @Test
+    public void weightsFollowBeta() {
+        PrioritizedReplayBuffer buffer = newBuffer(0.5f);
+        fill(buffer, CAPACITY);
+        setPriorities(buffer);
+
+        for (int i = 0; i < 200; i++) {
+            for (RlEnv.Step step : buffer.getBatch()) {
+                ReplayStep replayStep = (ReplayStep) step;
+                assertEquals(Math.sqrt(1.0 / (replayStep.getId() + 1)), replayStep.getWeight(), DELTA);
+                assertTrue(replayStep.getWeight() <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void newStepGetsTheHighestPriority() {
+        PrioritizedReplayBuffer buffer = newBuffer(1f);
+        fill(buffer, CAPACITY);
+        setPriorities(buffer);
+        // replaces step 0, the smallest priority is now the 2 of step 1
+        fill(buffer, 1);
+
+        boolean sampled = false;
+        for (int i = 0; i < 500; i++) {
+            for (RlEnv.Step step : buffer.getBatch()) {
+                ReplayStep replayStep = (ReplayStep) step;
+                if (replayStep.getId() == CAPACITY) {
+                    assertEquals(2.0 / CAPACITY, replayStep.getWeight(), DELTA);
+                    sampled = true;
+                } else {
+                    assertEquals(2.0 / (replayStep.getId() + 1), replayStep.getWeight(), DELTA);
+                }
+            }
+        }
+        assertTrue(sampled);
+    }
+
+    @Test
+    public void replacedStepsKeepTheirPriority() {
+        PrioritizedReplayBuffer buffer = newBuffer(1f);
+        fill(buffer, CAPACITY);
+        fill(buffer, CAPACITY);
+        // the steps 0 to 15 were replaced by the steps 16 to 31, whose priorities stay at 1
+        setPriorities(buffer);
+        for (int i = 0; i < 100; i++) {
+            for (RlEnv.Step step : buffer.getBatch()) {
+                assertEquals(1, ((ReplayStep) step).getWeight(), DELTA);
+            }
+        }
+    }
+
+    private PrioritizedReplayBuffer newBuffer(float beta) {
+        return new PrioritizedReplayBuffer(BATCH_SIZE, CAPACITY, DEPTH, SIDE, SIDE, 2, 1f, Tracker.fixed(beta));
+    }
+
+    private void fill(PrioritizedReplayBuffer buffer, int steps) {
+        for (int i = 0; i < steps; i++) {
+            buffer.addTransition(feed.next(false, i % 2, 1, false));
+        }
+    }
+
+    // gives the steps 0 to 15 the TD error k + 1, so with alpha 1 their priority is about k + 1
+    private static void setPriorities(PrioritizedReplayBuffer buffer) {
+        RlEnv.Step[] steps = new RlEnv.Step[CAPACITY];
+        float[] tdErrors = new float[CAPACITY];
+        for (int k = 0; k < CAPACITY; k++) {
+            byte[] frames = new byte[DEPTH * FRAME_SIZE];
+            steps[k] = new ReplayStep(new Shape(1, DEPTH, SIDE, SIDE), frames, frames, 0, 2, 0, false, k, 1);
+            tdErrors[k] = k + 1;
+        }
+        buffer.updatePriorities(steps, tdErrors);
+    }
+}
@@ -0,0 +1,88 @@
+package com.kingyu.rlbird.rl;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class SumTreeTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void totalAndMinFollowTheUpdates() {
+        SumTree tree = new SumTree(5);
+        assertEquals(0, tree.total(), DELTA);
+        assertEquals(Double.POSITIVE_INFINITY, tree.min(), DELTA);
+
+        double[] priorities = {1, 2, 0, 3, 4};
+        for (int i = 0; i < priorities.length; i++) {
+            tree.update(i, priorities[i]);
+        }
+        assertEquals(10, tree.total(), DELTA);
+        assertEquals(1, tree.min(), DELTA);
+
+        tree.update(0, 0.5);
+        tree.update(4, 0);
+        tree.update(2, 7);
+        assertEquals(0.5 + 2 + 7 + 3, tree.total(), DELTA);
+        assertEquals(0.5, tree.min(), DELTA);
+        assertEquals(7, tree.get(2), DELTA);
+        assertEquals(0, tree.get(4), DELTA);
+
+        tree.update(0, 0);
+        assertEquals(2, tree.min(), DELTA);
+    }
+
+    @Test
+    public void findReturnsTheLeafWhoseRangeHoldsThePrefixSum() {
+        SumTree tree = new SumTree(5);
+        double[] priorities = {1, 2, 0, 3, 4};
+        for (int i = 0; i < priorities.length; i++) {
+            tree.update(i, priorities[i]);
+        }
+        // ranges: 0 -> [0, 1), 1 -> [1, 3), 2 -> empty, 3 -> [3, 6), 4 -> [6, 10)
+        assertEquals(0, tree.find(0));
+        assertEquals(0, tree.find(0.999));
+        assertEquals(1, tree.find(1));
+        assertEquals(1, tree.find(2.999));
+        assertEquals(3, tree.find(3));
+        assertEquals(3, tree.find(5.999));
+        assertEquals(4, tree.find(6));
+        assertEquals(4, tree.find(9.999));
+        assertEquals(4, tree.find(10));
+    }
+
+    @Test
+    public void findNeverReturnsAnEmptyLeafPastTheLastPriority() {
+        SumTree tree = new SumTree(6);
+        tree.update(0, 1);
+        tree.update(1, 1);
+        // the leaves past the capacity and the zero priorities after index 1 are all empty
+        assertEquals(1, tree.find(2));
+        assertEquals(1, tree.find(2.5));
+    }
+
+    @Test
+    public void samplingFrequencyTracksPriority() {
+        double[] priorities = {1, 5, 0, 2, 8, 0.5, 3};
+        SumTree tree = new SumTree(priorities.length);
+        double total = 0;
+        for (int i = 0; i < priorities.length; i++) {
+            tree.update(i, priorities[i]);
+            total += priorities[i];
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        int samples = 200000;
+        int[] counts = new int[priorities.length];
+        for (int i = 0; i < samples; i++) {
+            counts[tree.find(random.nextDouble() * tree.total())]++;
+        }
+        for (int i = 0; i < priorities.length; i++) {
+            assertEquals("frequency of " + i, priorities[i] / total, (double) counts[i] / samples, 0.005);
+        }
+        assertEquals(0, counts[2]);
+    }
+}
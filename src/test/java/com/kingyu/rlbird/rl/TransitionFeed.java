@@ -0,0 +1,104 @@
+package com.kingyu.rlbird.rl;
+
+import com.kingyu.rlbird.rl.env.Transition;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plays the transitions of one environment for the replay buffer tests, each frame holding its own
+ * number so that the frames of a sampled step can be told apart. The numbers of the environment
+ * {@code e} start from {@code e << 32}, so that the frames of two environments never share one.
+ */
+final class TransitionFeed {
+
+    private final int envId;
+    private final int frameSize;
+    private long nextFrame;
+    private byte[] lastFrame;
+
+    TransitionFeed(int envId, int frameSize) {
+        this.envId = envId;
+        this.frameSize = frameSize;
+    }
+
+    /**
+     * Returns the next transition of the environment, whose post frame is a new frame.
+     */
+    Transition next(boolean episodeStart, int actionIndex, float reward, boolean terminal) {
+        boolean start = episodeStart || lastFrame == null;
+        byte[] preFrame = start ? frame(nextFrame++) : lastFrame;
+        byte[] postFrame = frame(nextFrame++);
+        lastFrame = terminal ? null : postFrame;
+        return new Transition() {
+            @Override
+            public int getEnvId() {
+                return envId;
+            }
+
+            @Override
+            public boolean isEpisodeStart() {
+                return start;
+            }
+
+            @Override
+            public byte[] getPreFrame() {
+                return preFrame;
+            }
+
+            @Override
+            public byte[] getPostFrame() {
+                return postFrame;
+            }
+
+            @Override
+            public int getActionIndex() {
+                return actionIndex;
+            }
+
+            @Override
+            public float getRewardValue() {
+                return reward;
+            }
+
+            @Override
+            public boolean isTerminal() {
+                return terminal;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of frames played so far.
+     */
+    long getFrameCount() {
+        return nextFrame;
+    }
+
+    /**
+     * Returns the number of the frame at an offset of stacked frames, checking that the
+     * frame is whole.
+     */
+    static long sequenceOf(byte[] frames, int offset, int frameSize) {
+        long sequence = ByteBuffer.wrap(frames, offset, Long.BYTES).getLong();
+        for (int i = Long.BYTES; i < frameSize; i++) {
+            if (frames[offset + i] != pixel(sequence, i)) {
+                throw new AssertionError("The frame " + sequence + " is torn at pixel " + i);
+            }
+        }
+        return sequence;
+    }
+
+    private byte[] frame(long count) {
+        long sequence = (long) envId << 32 | count;
+        byte[] frame = new byte[frameSize];
+        ByteBuffer.wrap(frame).putLong(sequence);
+        for (int i = Long.BYTES; i < frameSize; i++) {
+            frame[i] = pixel(sequence, i);
+        }
+        return frame;
+    }
+
+    private static byte pixel(long sequence, int index) {
+        return (byte) (sequence * 31 + index);
+    }
+}
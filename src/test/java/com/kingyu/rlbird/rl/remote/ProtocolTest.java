@@ -0,0 +1,185 @@
+package com.kingyu.rlbird.rl.remote;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ProtocolTest {
+
+    private static final int HEIGHT = 3;
+    private static final int WIDTH = 5;
+    private static final int FRAME_SIZE = HEIGHT * WIDTH;
+
+    @Test
+    public void helloRoundTrips() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Protocol.writeHello(new DataOutputStream(bytes), HEIGHT, WIDTH, 2);
+
+        DataInputStream in = input(bytes.toByteArray());
+        Protocol.readHello(in, HEIGHT, WIDTH, 2);
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void helloWithOtherShapesIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Protocol.writeHello(new DataOutputStream(bytes), HEIGHT, WIDTH, 3);
+        try {
+            Protocol.readHello(input(bytes.toByteArray()), HEIGHT, WIDTH, 2);
+            fail("A hello with other shapes was accepted");
+        } catch (IOException e) {
+            assertEquals("The actor plays with other shapes", e.getMessage());
+        }
+    }
+
+    @Test
+    public void helloOfAnotherProtocolIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeBytes("GET / HTTP/1.1\r\n\r\n");
+        try {
+            Protocol.readHello(input(bytes.toByteArray()), HEIGHT, WIDTH, 2);
+            fail("Another protocol was accepted");
+        } catch (IOException e) {
+            assertEquals("Not an actor", e.getMessage());
+        }
+    }
+
+    @Test
+    public void stepsRoundTrip() throws IOException {
+        TransitionStep first = new TransitionStep(7, true, frame(1), frame(2), 1, 0.1f, false);
+        TransitionStep second = new TransitionStep(7, false, null, frame(3), 0, -1f, true);
+        TransitionStep third = new TransitionStep(Integer.MAX_VALUE, true, frame(4), frame(5), 1, 1f, true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Protocol.writeStep(out, first);
+        Protocol.writeStep(out, second);
+        Protocol.writeStep(out, third);
+        // only the post frame is sent when the step does not start an episode
+        assertEquals(3 * 11 + 5 * FRAME_SIZE, bytes.size());
+
+        DataInputStream in = input(bytes.toByteArray());
+        assertStep(first, Protocol.readStep(in, FRAME_SIZE));
+        assertStep(second, Protocol.readStep(in, FRAME_SIZE));
+        assertStep(third, Protocol.readStep(in, FRAME_SIZE));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void stepTakesTheEnvIdOfTheLearner() {
+        TransitionStep step = new TransitionStep(7, true, frame(1), frame(2), 1, 0.5f, true);
+        TransitionStep mapped = step.withEnvId(3);
+        assertEquals(3, mapped.getEnvId());
+        assertStep(new TransitionStep(3, true, frame(1), frame(2), 1, 0.5f, true), mapped);
+    }
+
+    @Test
+    public void partialStepIsNeverReturned() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        TransitionStep whole = new TransitionStep(0, true, frame(1), frame(2), 1, 1f, false);
+        Protocol.writeStep(out, whole);
+        int wholeLength = bytes.size();
+        Protocol.writeStep(out, new TransitionStep(0, true, frame(3), frame(4), 0, 0f, true));
+        byte[] message = bytes.toByteArray();
+
+        // cut the stream at every byte of the second step, as a closed connection would
+        for (int length = wholeLength + 1; length < message.length; length++) {
+            DataInputStream in = input(Arrays.copyOf(message, length));
+            assertStep(whole, Protocol.readStep(in, FRAME_SIZE));
+            try {
+                Protocol.readStep(in, FRAME_SIZE);
+                fail("A step cut after " + (length - wholeLength) + " bytes was read");
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void closedStreamHasNoStep() throws IOException {
+        Protocol.readStep(input(new byte[0]), FRAME_SIZE);
+    }
+
+    @Test
+    public void unknownMessageIsRejected() throws IOException {
+        try {
+            Protocol.readStep(input(new byte[]{Protocol.PARAMETERS, 0, 0, 0, 0}), FRAME_SIZE);
+            fail("A parameters message was read as a step");
+        } catch (EOFException e) {
+            fail("The message type was not checked first");
+        } catch (IOException e) {
+            assertEquals("Unknown message " + Protocol.PARAMETERS, e.getMessage());
+        }
+    }
+
+    @Test
+    public void parametersRoundTrip() throws IOException {
+        float[][] values = {{1f, -2.5f, Float.MIN_VALUE}, {}, {Float.MAX_VALUE, Float.NaN}, new float[1000]};
+        values[3][999] = 42f;
+
+        DataInputStream in = input(Protocol.encodeParameters(12345678901L, values));
+        assertEquals(Protocol.PARAMETERS, in.readByte());
+        assertEquals(12345678901L, in.readLong());
+        float[][] read = Protocol.readParameters(in);
+        assertEquals(values.length, read.length);
+        for (int i = 0; i < values.length; i++) {
+            assertArrayEquals(values[i], read[i], 0f);
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void partialParametersAreNeverReturned() {
+        byte[] message = Protocol.encodeParameters(1, new float[][]{{1f, 2f}, {3f}});
+        // after the type and the version
+        for (int length = 9; length < message.length; length++) {
+            DataInputStream in = input(Arrays.copyOfRange(message, 9, length));
+            try {
+                Protocol.readParameters(in);
+                fail("Parameters cut after " + (length - 9) + " bytes were read");
+            } catch (EOFException e) {
+                // expected
+            } catch (IOException e) {
+                fail("Expected an EOFException, got " + e);
+            }
+        }
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] frame(int seed) {
+        byte[] frame = new byte[FRAME_SIZE];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (seed * 31 + i * 7);
+        }
+        return frame;
+    }
+
+    private static void assertStep(TransitionStep expected, TransitionStep actual) {
+        assertEquals(expected.getEnvId(), actual.getEnvId());
+        assertEquals(expected.isEpisodeStart(), actual.isEpisodeStart());
+        if (expected.isEpisodeStart()) {
+            assertArrayEquals(expected.getPreFrame(), actual.getPreFrame());
+        } else {
+            assertNull(actual.getPreFrame());
+        }
+        assertArrayEquals(expected.getPostFrame(), actual.getPostFrame());
+        assertEquals(expected.getActionIndex(), actual.getActionIndex());
+        assertEquals(expected.getRewardValue(), actual.getRewardValue(), 0f);
+        assertEquals(expected.isTerminal(), actual.isTerminal());
+    }
+}
@@ -0,0 +1,108 @@
+package com.kingyu.rlbird.rl.remote;
+
+import com.kingyu.rlbird.rl.env.Transition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionServerTest {
+
+    private static final int HEIGHT = 2;
+    private static final int WIDTH = 3;
+    private static final int FRAME_SIZE = HEIGHT * WIDTH;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private List<Transition> received;
+    private TransitionServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        received = new CopyOnWriteArrayList<>();
+        server = new TransitionServer(0, received::add, HEIGHT, WIDTH, 2);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void actorClosedInTheMiddleOfAStepAddsOnlyItsWholeSteps() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Protocol.writeHello(out, HEIGHT, WIDTH, 2);
+        Protocol.writeStep(out, new TransitionStep(5, true, frame(1), frame(2), 1, 1f, false));
+        int wholeLength = bytes.size();
+        Protocol.writeStep(out, new TransitionStep(5, false, null, frame(3), 0, 0f, true));
+        byte[] message = bytes.toByteArray();
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream stream = socket.getOutputStream();
+            stream.write(message, 0, wholeLength + 6);
+            stream.flush();
+            await(() -> server.getStepCount() == 1);
+        }
+        await(() -> server.getActorCount() == 0);
+
+        assertEquals(1, server.getStepCount());
+        assertEquals(1, received.size());
+        Transition step = received.get(0);
+        assertEquals(0, step.getEnvId());
+        assertTrue(step.isEpisodeStart());
+        assertEquals(1, step.getActionIndex());
+    }
+
+    @Test
+    public void serverKeepsServingAfterAnActorIsLost() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            Protocol.writeHello(out, HEIGHT, WIDTH, 2);
+            out.writeByte(Protocol.STEP);
+            out.writeInt(0);
+            out.flush();
+            await(() -> server.getActorCount() == 1);
+        }
+        await(() -> server.getActorCount() == 0);
+
+        try (RemoteReplayBuffer actor = new RemoteReplayBuffer("localhost", server.getPort(), HEIGHT, WIDTH, 2)) {
+            actor.addTransition(new TransitionStep(0, true, frame(1), frame(2), 0, 1f, false));
+            actor.addTransition(new TransitionStep(0, false, null, frame(3), 1, 1f, true));
+            actor.flush();
+            await(() -> server.getStepCount() == 2);
+        }
+        assertEquals(2, received.size());
+        // the lost actor never started an environment
+        assertEquals(0, received.get(0).getEnvId());
+        assertEquals(1, received.get(1).getActionIndex());
+        assertTrue(received.get(1).isTerminal());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] frame(int seed) {
+        byte[] frame = new byte[FRAME_SIZE];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (seed * 31 + i);
+        }
+        return frame;
+    }
+}